@@ -0,0 +1,100 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  BridgeEncodingBenchmark.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.util.Base64;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames crossing the bridge as hexadecimal strings (sendRequest) or as ArrayBuffers (sendBinaryRequest),
+ * from the arguments of the call to the message of the result sent to the WebView.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BridgeEncodingBenchmark {
+
+    private static final String DEVICE_ID = "AA:BB:CC:DD:EE:01";
+
+    /**
+     * Frame sizes: one ATT payload, one large MTU payload and a transfer chunk
+     */
+    @Param({"20", "244", "1024"})
+    int size;
+
+    private byte[] frame;
+    private JSONArray hexArgs;
+    private JSONArray binaryArgs;
+    private MessageSink sink;
+
+    /**
+     * Encodes each result as the WebView would receive it, and keeps the callback open
+     */
+    static class MessageSink extends CallbackContext {
+        String message;
+
+        MessageSink() {
+            super("benchmark", null);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            message = pluginResult.getMessage();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        frame = new byte[size];
+        new Random(size).nextBytes(frame);
+        hexArgs = new JSONArray().put(DEVICE_ID).put(HexCodec.encode(frame));
+        binaryArgs = new JSONArray().put(DEVICE_ID).put(Base64.encodeToString(frame, Base64.NO_WRAP));
+        sink = new MessageSink();
+    }
+
+    @Benchmark
+    public byte[] decodeHexRequest() throws BLEComError {
+        return HexCodec.decode(new ArgsHelper(hexArgs).getString(1));
+    }
+
+    @Benchmark
+    public byte[] decodeBinaryRequest() throws BLEComError {
+        return new ArgsHelper(binaryArgs).getArrayBuffer(1);
+    }
+
+    @Benchmark
+    public String encodeHexResponse() {
+        new PluginResponse("sendRequest", hexArgs, sink).success(frame);
+        return sink.message;
+    }
+
+    @Benchmark
+    public String encodeBinaryResponse() {
+        new PluginResponse("sendBinaryRequest", binaryArgs, sink).successBinary(frame);
+        return sink.message;
+    }
+}
@@ -0,0 +1,77 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  DeviceRegistryBenchmark.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Device lookups done by each call, with more and more registered devices
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceRegistryBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int devices;
+
+    private DeviceRegistry<Object> registry;
+    private String[] deviceIds;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() throws BLEComError {
+        registry = new DeviceRegistry<>();
+        deviceIds = new String[devices];
+        for (int i = 0; i < devices; i++) {
+            deviceIds[i] = String.format(Locale.ROOT, "AA:BB:CC:DD:%02X:%02X", (i >> 8) & 0xFF, i & 0xFF);
+            registry.getOrCreate(deviceIds[i], deviceId -> new Object());
+        }
+    }
+
+    private String nextDeviceId(Cursor cursor) {
+        cursor.next = cursor.next + 1 == devices ? 0 : cursor.next + 1;
+        return deviceIds[cursor.next];
+    }
+
+    @Benchmark
+    public Object get(Cursor cursor) throws BLEComError {
+        return registry.get(nextDeviceId(cursor));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object getContended(Cursor cursor) throws BLEComError {
+        return registry.get(nextDeviceId(cursor));
+    }
+
+    @Benchmark
+    public Object getOrCreate(Cursor cursor) throws BLEComError {
+        return registry.getOrCreate(nextDeviceId(cursor), deviceId -> new Object());
+    }
+}
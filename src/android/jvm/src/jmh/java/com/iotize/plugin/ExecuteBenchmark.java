@@ -0,0 +1,86 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  ExecuteBenchmark.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls going through BLECom.execute, against a stubbed link that replies at once, so that
+ * only the plugin is measured: dispatch, argument parsing, device queue and reply.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecuteBenchmark {
+
+    private static final String DEVICE_ID = "AA:BB:CC:DD:EE:01";
+    private static final long TIMEOUT_MS = 5000;
+
+    private JvmBridge bridge;
+    private BLECom plugin;
+    private JSONArray isConnectedArgs;
+    private JSONArray sendRequestArgs;
+    private JSONArray sendRequestsArgs;
+
+    @Setup
+    public void setUp() throws Exception {
+        CordovaPreferences preferences = new CordovaPreferences();
+        preferences.set("BLEKnownDevicesCacheSize", 0);
+        bridge = new JvmBridge();
+        plugin = bridge.load(new BLECom(), preferences);
+        PluginResult connected = bridge.call(plugin, "connect", new JSONArray().put(DEVICE_ID), "CONNECTED", TIMEOUT_MS);
+        if (!JvmBridge.isOk(connected)) {
+            throw new IllegalStateException("Cannot connect: " + connected.getMessage());
+        }
+        isConnectedArgs = new JSONArray().put(DEVICE_ID);
+        sendRequestArgs = new JSONArray().put(DEVICE_ID).put("000A0100");
+        JSONArray frames = new JSONArray();
+        for (int i = 0; i < 8; i++) {
+            frames.put("000A0100");
+        }
+        sendRequestsArgs = new JSONArray().put(DEVICE_ID).put(frames);
+    }
+
+    @TearDown
+    public void tearDown() {
+        plugin.onDestroy();
+        bridge.shutdown();
+    }
+
+    @Benchmark
+    public PluginResult isConnected() throws Exception {
+        return bridge.call(plugin, "isConnected", isConnectedArgs, TIMEOUT_MS);
+    }
+
+    @Benchmark
+    public PluginResult sendRequest() throws Exception {
+        return bridge.call(plugin, "sendRequest", sendRequestArgs, TIMEOUT_MS);
+    }
+
+    @Benchmark
+    public PluginResult sendRequests() throws Exception {
+        return bridge.call(plugin, "sendRequests", sendRequestsArgs, TIMEOUT_MS);
+    }
+}
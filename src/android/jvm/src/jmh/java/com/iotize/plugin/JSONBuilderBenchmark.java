@@ -0,0 +1,58 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  JSONBuilderBenchmark.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.bluetooth.BluetoothDevice;
+
+import com.iotize.android.communication.protocol.ble.scanner.BLEScanner;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON built for each scan result and each failed request
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSONBuilderBenchmark {
+
+    private BLEScanner.BLEScanData scanData;
+    private BLEComError error;
+
+    @Setup
+    public void setUp() {
+        scanData = new BLEScanner.BLEScanData(new BluetoothDevice("AA:BB:CC:DD:EE:01", "IoTize tag"), -67);
+        error = BLEComError.requestError(new IOException("Response timeout"), "AA:BB:CC:DD:EE:01", new byte[]{0, 10, 1, 0});
+    }
+
+    @Benchmark
+    public String scanResult() {
+        return JSONBuilder.toJSONObject(scanData).toString();
+    }
+
+    @Benchmark
+    public String error() {
+        JSONObject json = JSONBuilder.toJSONObject(error);
+        return json.toString();
+    }
+}
@@ -0,0 +1,85 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  RecordingBenchmark.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost added to each request by the flight recorder and the latency histograms,
+ * from one device worker and from several workers recording at the same time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordingBenchmark {
+
+    private static final String DEVICE_ID = "AA:BB:CC:DD:EE:01";
+
+    private FlightRecorder recorder;
+    private LatencyHistogram histogram;
+
+    @State(Scope.Thread)
+    public static class Latency {
+        long nanos;
+
+        /**
+         * Spreads the values over the buckets, from 10µs to about 1s
+         */
+        long next() {
+            nanos = nanos * 31 % 1000000000L + 10000;
+            return nanos;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        recorder = new FlightRecorder(FlightRecorder.DEFAULT_CAPACITY);
+        histogram = new LatencyHistogram();
+    }
+
+    @Benchmark
+    public void recordRequest(Latency latency) {
+        recorder.request(DEVICE_ID, "send", latency.next(), 20);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordRequestContended(Latency latency) {
+        recorder.request(DEVICE_ID, "send", latency.next(), 20);
+    }
+
+    @Benchmark
+    public void recordError() {
+        recorder.error(DEVICE_ID, "sendRequest", "RequestError", "Response timeout");
+    }
+
+    @Benchmark
+    public void recordLatency(Latency latency) {
+        histogram.record(latency.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordLatencyContended(Latency latency) {
+        histogram.record(latency.next());
+    }
+}
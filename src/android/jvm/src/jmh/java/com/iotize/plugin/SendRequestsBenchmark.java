@@ -0,0 +1,102 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  SendRequestsBenchmark.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Framing of a sendRequests batch: the frames parsed from the hexadecimal arguments, then one
+ * result per frame in a single message, compared to one message per frame with sendRequest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendRequestsBenchmark {
+
+    private static final String DEVICE_ID = "AA:BB:CC:DD:EE:01";
+
+    @Param({"1", "8", "32"})
+    int frames;
+
+    @Param({"20"})
+    int size;
+
+    private JSONArray args;
+    private byte[][] responses;
+    private BLEComError error;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(frames);
+        JSONArray hexFrames = new JSONArray();
+        responses = new byte[frames][size];
+        for (int i = 0; i < frames; i++) {
+            random.nextBytes(responses[i]);
+            hexFrames.put(HexCodec.encode(responses[i]));
+        }
+        args = new JSONArray().put(DEVICE_ID).put(hexFrames);
+        error = BLEComError.requestError(new IOException("Response timeout"), DEVICE_ID, responses[0]);
+    }
+
+    @Benchmark
+    public byte[][] parseFrames() throws BLEComError {
+        JSONArray hexFrames = new ArgsHelper(args).getJSONArray(1);
+        byte[][] parsed = new byte[hexFrames.length()][];
+        for (int i = 0; i < parsed.length; i++) {
+            parsed[i] = HexCodec.decode(hexFrames.optString(i));
+        }
+        return parsed;
+    }
+
+    @Benchmark
+    public String batchResults() {
+        JSONArray results = new JSONArray();
+        for (byte[] response : responses) {
+            results.put(JSONBuilder.toBatchResult(HexCodec.encode(response)));
+        }
+        return new PluginResult(PluginResult.Status.OK, results).getMessage();
+    }
+
+    /**
+     * A batch whose frames all fail, the error objects are larger than the responses
+     */
+    @Benchmark
+    public String batchErrors() {
+        JSONArray results = new JSONArray();
+        for (int i = 0; i < frames; i++) {
+            results.put(JSONBuilder.toBatchResult(error));
+        }
+        return new PluginResult(PluginResult.Status.OK, results).getMessage();
+    }
+
+    @Benchmark
+    public void separateResults(Blackhole blackhole) {
+        for (byte[] response : responses) {
+            blackhole.consume(new PluginResult(PluginResult.Status.OK, HexCodec.encode(response)).getMessage());
+        }
+    }
+}
@@ -0,0 +1,410 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  LoadGenerator.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.util.Base64;
+
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Drives BLECom.execute with simulated devices and reports the sustained requests per second,
+ * the latency percentiles seen by the caller and the heap growth.
+ *
+ * Each device keeps a fixed number of calls in flight, the next call is made when one replies.
+ * Calls are made from a single thread, as the WebView does.
+ *
+ * <pre>
+ * gradle -p src/android/jvm load -Pload.args="--devices=50 --durationS=60 --errorRate=0.01 --disconnectRate=0.001"
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final String DEVICE_ID_PREFIX = "AA:BB:CC:DD:";
+    private static final long TIMEOUT_MS = 30000;
+
+    static class Options {
+        int devices = 10;
+        long durationS = 30;
+        int inFlight = 4;
+        long reportIntervalS = 5;
+        /**
+         * Share of each action, as action:weight pairs
+         */
+        String mix = "sendRequest:80,sendRequests:10,sendBinaryRequest:10";
+        int frameSize = 20;
+        int batchSize = 8;
+        /**
+         * Pause before the next call of a device after an error, so that a dropped link is not hammered
+         */
+        long retryDelayMs = 10;
+        int maxLinks;
+        int queueCapacity = 32;
+        final FakeBLEProtocol.Behavior behavior = new FakeBLEProtocol.Behavior();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            FakeBLEProtocol.Behavior behavior = options.behavior;
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                if (!arg.startsWith("--") || separator < 0) {
+                    throw new IllegalArgumentException("Expected --name=value, got " + arg);
+                }
+                String name = arg.substring(2, separator);
+                String value = arg.substring(separator + 1);
+                switch (name) {
+                    case "devices": options.devices = Integer.parseInt(value); break;
+                    case "durationS": options.durationS = Long.parseLong(value); break;
+                    case "inFlight": options.inFlight = Integer.parseInt(value); break;
+                    case "reportIntervalS": options.reportIntervalS = Long.parseLong(value); break;
+                    case "mix": options.mix = value; break;
+                    case "frameSize": options.frameSize = Integer.parseInt(value); break;
+                    case "batchSize": options.batchSize = Integer.parseInt(value); break;
+                    case "retryDelayMs": options.retryDelayMs = Long.parseLong(value); break;
+                    case "maxLinks": options.maxLinks = Integer.parseInt(value); break;
+                    case "queueCapacity": options.queueCapacity = Integer.parseInt(value); break;
+                    case "latencyMs": behavior.latencyMs = Long.parseLong(value); break;
+                    case "jitterMs": behavior.jitterMs = Long.parseLong(value); break;
+                    case "slowRate": behavior.slowRate = Double.parseDouble(value); break;
+                    case "slowLatencyMs": behavior.slowLatencyMs = Long.parseLong(value); break;
+                    case "connectLatencyMs": behavior.connectLatencyMs = Long.parseLong(value); break;
+                    case "errorRate": behavior.errorRate = Double.parseDouble(value); break;
+                    case "disconnectRate": behavior.disconnectRate = Double.parseDouble(value); break;
+                    case "seed": behavior.seed = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown option " + name);
+                }
+            }
+            if (options.maxLinks <= 0) {
+                options.maxLinks = options.devices;
+            }
+            return options;
+        }
+    }
+
+    /**
+     * Log-linear histogram of the latencies in microseconds: exact below 128µs,
+     * then 64 buckets per power of two, so that percentiles are within 2%
+     */
+    static class Latencies {
+        private static final int LINEAR = 128;
+        private static final int PER_POWER = 64;
+
+        private final AtomicLongArray counts = new AtomicLongArray(64 * PER_POWER);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(nanos / 1000, 0);
+            counts.incrementAndGet(index(micros));
+            count.incrementAndGet();
+            long max;
+            do {
+                max = maxMicros.get();
+            } while (micros > max && !maxMicros.compareAndSet(max, micros));
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        double getMaxMs() {
+            return maxMicros.get() / 1e3;
+        }
+
+        /**
+         * @return the upper bound of the bucket of the percentile
+         */
+        double getPercentileMs(double percentile) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max((long) Math.ceil(percentile * total), 1);
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(lowerBound(i + 1), maxMicros.get()) / 1e3;
+                }
+            }
+            return getMaxMs();
+        }
+
+        static int index(long micros) {
+            if (micros < LINEAR) {
+                return (int) micros;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(micros) - 6;
+            return shift * PER_POWER + (int) (micros >> shift);
+        }
+
+        static long lowerBound(int index) {
+            if (index < LINEAR) {
+                return index;
+            }
+            int shift = index / PER_POWER - 1;
+            return (long) (index % PER_POWER + PER_POWER) << shift;
+        }
+    }
+
+    private static class Action {
+        final String name;
+        final int weight;
+        final Latencies latencies = new Latencies();
+        final AtomicLong errors = new AtomicLong();
+
+        Action(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+    }
+
+    private final Options options;
+    private final JvmBridge bridge = new JvmBridge();
+    private final SimulatedBLECom plugin;
+    /**
+     * Stands for the WebView thread, the only one calling execute
+     */
+    private final ScheduledExecutorService webThread = Executors.newSingleThreadScheduledExecutor();
+    private final List<Action> actions = new ArrayList<>();
+    private final int totalWeight;
+    private final Random random;
+    private final String[] deviceIds;
+    private final byte[] frame;
+    private final String hexFrame;
+    private final String base64Frame;
+    private final Latencies latencies = new Latencies();
+    private final AtomicLong errors = new AtomicLong();
+    private final Map<String, AtomicLong> errorCodes = new ConcurrentHashMap<>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private volatile boolean running;
+    private long peakHeap;
+
+    LoadGenerator(Options options) {
+        this.options = options;
+        CordovaPreferences preferences = new CordovaPreferences();
+        preferences.set("BLEKnownDevicesCacheSize", 0);
+        preferences.set("BLEMaxConnections", options.maxLinks);
+        preferences.set("BLERequestQueueCapacity", options.queueCapacity);
+        this.plugin = bridge.load(new SimulatedBLECom(options.behavior), preferences);
+        int weights = 0;
+        for (String entry : options.mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            Action action = new Action(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+            actions.add(action);
+            weights += action.weight;
+        }
+        this.totalWeight = weights;
+        this.random = new Random(options.behavior.seed);
+        this.deviceIds = new String[options.devices];
+        for (int i = 0; i < deviceIds.length; i++) {
+            deviceIds[i] = String.format(Locale.ROOT, "%s%02X:%02X", DEVICE_ID_PREFIX, (i >> 8) & 0xFF, i & 0xFF);
+        }
+        this.frame = new byte[options.frameSize];
+        random.nextBytes(frame);
+        this.hexFrame = HexCodec.encode(frame);
+        this.base64Frame = Base64.encodeToString(frame, Base64.NO_WRAP);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator(Options.parse(args));
+        try {
+            generator.run();
+        } finally {
+            generator.close();
+        }
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        JSONObject connectOptions = new JSONObject();
+        if (options.behavior.disconnectRate > 0) {
+            connectOptions.put("autoReconnect", new JSONObject().put("maxAttempts", 10).put("initialDelayMs", 100));
+        }
+        long connectStart = System.nanoTime();
+        for (String deviceId : deviceIds) {
+            PluginResult result = bridge.call(plugin, "connect", new JSONArray().put(deviceId).put(connectOptions), "CONNECTED", TIMEOUT_MS);
+            if (!JvmBridge.isOk(result)) {
+                throw new IllegalStateException("Cannot connect to " + deviceId + ": " + result.getMessage());
+            }
+        }
+        System.out.printf(Locale.ROOT, "Connected %d devices in %d ms%n",
+                deviceIds.length, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart));
+
+        long heapBefore = usedHeapAfterGc();
+        peakHeap = heapBefore;
+        running = true;
+        long start = System.nanoTime();
+        webThread.execute(() -> {
+            for (String deviceId : deviceIds) {
+                for (int i = 0; i < options.inFlight; i++) {
+                    call(deviceId);
+                }
+            }
+        });
+        long previousCount = 0;
+        long previousErrors = 0;
+        long end = start + TimeUnit.SECONDS.toNanos(options.durationS);
+        while (System.nanoTime() < end) {
+            long now = System.nanoTime();
+            Thread.sleep(Math.min(TimeUnit.SECONDS.toMillis(options.reportIntervalS), Math.max(TimeUnit.NANOSECONDS.toMillis(end - now), 1)));
+            long count = latencies.getCount();
+            long errorCount = errors.get();
+            long heap = memory.getHeapMemoryUsage().getUsed();
+            peakHeap = Math.max(peakHeap, heap);
+            double intervalS = (System.nanoTime() - now) / 1e9;
+            System.out.printf(Locale.ROOT, "%6.1fs  %9.1f req/s  %6d errors  heap %7.1f MB%n",
+                    (System.nanoTime() - start) / 1e9, (count - previousCount) / intervalS, errorCount - previousErrors, heap / 1e6);
+            previousCount = count;
+            previousErrors = errorCount;
+        }
+        running = false;
+        double elapsedS = (System.nanoTime() - start) / 1e9;
+        long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS);
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        long heapAfter = usedHeapAfterGc();
+        report(elapsedS, heapBefore, heapAfter);
+    }
+
+    private void call(String deviceId) {
+        if (!running) {
+            return;
+        }
+        Action action = pickAction();
+        JSONArray args = new JSONArray().put(deviceId);
+        switch (action.name) {
+            case "sendRequest":
+                args.put(hexFrame);
+                break;
+            case "sendBinaryRequest":
+                args.put(base64Frame);
+                break;
+            case "sendRequests": {
+                JSONArray frames = new JSONArray();
+                for (int i = 0; i < options.batchSize; i++) {
+                    frames.put(hexFrame);
+                }
+                args.put(frames);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported action " + action.name);
+        }
+        outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        plugin.execute(action.name, args, bridge.newCallbackContext(result -> {
+            long nanos = System.nanoTime() - start;
+            // The message is encoded as for the WebView
+            String message = result.getMessage();
+            latencies.record(nanos);
+            action.latencies.record(nanos);
+            boolean failed = !JvmBridge.isOk(result);
+            if (failed) {
+                errors.incrementAndGet();
+                action.errors.incrementAndGet();
+                errorCodes.computeIfAbsent(errorCode(message), code -> new AtomicLong()).incrementAndGet();
+            }
+            outstanding.decrementAndGet();
+            if (running) {
+                webThread.schedule(() -> call(deviceId), failed ? options.retryDelayMs : 0, TimeUnit.MILLISECONDS);
+            }
+        }));
+    }
+
+    private Action pickAction() {
+        int draw = random.nextInt(totalWeight);
+        for (Action action : actions) {
+            draw -= action.weight;
+            if (draw < 0) {
+                return action;
+            }
+        }
+        return actions.get(actions.size() - 1);
+    }
+
+    private static String errorCode(String message) {
+        try {
+            return new JSONObject(message).optString("code", "unknown");
+        } catch (RuntimeException e) {
+            return "unknown";
+        }
+    }
+
+    private long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private void report(double elapsedS, long heapBefore, long heapAfter) {
+        long count = latencies.getCount();
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%d devices, %d calls in flight each, %.1fs%n", options.devices, options.inFlight, elapsedS);
+        System.out.printf(Locale.ROOT, "requests  %d (%.1f req/s), errors %d (%.2f%%)%n",
+                count, count / elapsedS, errors.get(), count == 0 ? 0 : 100.0 * errors.get() / count);
+        System.out.printf(Locale.ROOT, "%-18s %9s %8s %8s %8s %8s %8s%n", "latency (ms)", "count", "errors", "p50", "p90", "p99", "max");
+        printLatencies("all", latencies, errors.get());
+        for (Action action : actions) {
+            printLatencies(action.name, action.latencies, action.errors.get());
+        }
+        if (!errorCodes.isEmpty()) {
+            Map<String, Long> codes = new LinkedHashMap<>();
+            for (Map.Entry<String, AtomicLong> entry : errorCodes.entrySet()) {
+                codes.put(entry.getKey(), entry.getValue().get());
+            }
+            System.out.println("errors by code    " + codes);
+        }
+        long frames = 0;
+        long injectedErrors = 0;
+        long disconnects = 0;
+        for (FakeBLEProtocol link : plugin.getLinks()) {
+            frames += link.getFrameCount();
+            injectedErrors += link.getErrorCount();
+            disconnects += link.getDisconnectCount();
+        }
+        System.out.printf(Locale.ROOT, "peripherals       %d frames, %d injected errors, %d disconnects%n", frames, injectedErrors, disconnects);
+        System.out.printf(Locale.ROOT, "heap (MB)         %.1f after connect, %.1f at the end, %+.1f growth, %.1f peak%n",
+                heapBefore / 1e6, heapAfter / 1e6, (heapAfter - heapBefore) / 1e6, peakHeap / 1e6);
+        System.out.printf(Locale.ROOT, "open callbacks    %d (%d kept by connect), %d calls without reply%n",
+                bridge.getOpenCallbacks(), deviceIds.length, outstanding.get());
+    }
+
+    private static void printLatencies(String name, Latencies latencies, long errors) {
+        System.out.printf(Locale.ROOT, "%-18s %9d %8d %8.2f %8.2f %8.2f %8.2f%n", name, latencies.getCount(), errors,
+                latencies.getPercentileMs(0.5), latencies.getPercentileMs(0.9), latencies.getPercentileMs(0.99), latencies.getMaxMs());
+    }
+
+    void close() {
+        running = false;
+        webThread.shutdownNow();
+        plugin.onDestroy();
+        bridge.shutdown();
+    }
+}
@@ -0,0 +1,155 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  FakeBLEProtocol.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.content.Context;
+
+import com.iotize.android.communication.protocol.ble.BLEProtocol;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulated peripheral. Each frame gets its own echo after a random latency, or fails,
+ * or the link drops, according to the behavior. The random draws of a device only depend
+ * on the seed and its address, so that a run can be replayed with the same faults.
+ */
+public class FakeBLEProtocol extends BLEProtocol {
+
+    public static class Behavior {
+        /**
+         * Latency of the replies, spread uniformly over latencyMs ± jitterMs
+         */
+        long latencyMs = 10;
+        long jitterMs = 5;
+        /**
+         * Part of the replies that take slowLatencyMs instead, for the tail of the distribution
+         */
+        double slowRate = 0.01;
+        long slowLatencyMs = 200;
+        long connectLatencyMs = 50;
+        /**
+         * Part of the frames that fail with a response timeout
+         */
+        double errorRate;
+        /**
+         * Part of the frames that drop the link, the frame fails and the link is disconnected
+         */
+        double disconnectRate;
+        /**
+         * Largest MTU the peripheral accepts, and the time the MTU exchange takes
+         */
+        int maxMtu = 247;
+        long mtuExchangeMs = 30;
+        long seed = 1;
+    }
+
+    private final Behavior behavior;
+    private final Random random;
+    private final BluetoothGatt gatt = new BluetoothGatt() {
+        @Override
+        public boolean requestMtu(int requested) {
+            if (!isConnected()) {
+                return false;
+            }
+            // Answered later, like the MTU exchange callback
+            Thread exchange = new Thread(() -> {
+                try {
+                    Thread.sleep(behavior.mtuExchangeMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                mtu = Math.min(requested, behavior.maxMtu);
+            }, "FakeMtuExchange");
+            exchange.setDaemon(true);
+            exchange.start();
+            return true;
+        }
+    };
+    private volatile int mtu = PerformanceProfile.DEFAULT_MTU;
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+
+    public FakeBLEProtocol(Context context, BluetoothDevice device, Behavior behavior) {
+        super(context, device);
+        this.behavior = behavior;
+        this.random = new Random(behavior.seed * 31 + device.getAddress().hashCode());
+    }
+
+    @Override
+    public void connect() throws Exception {
+        if (isConnected()) {
+            return;
+        }
+        setConnectionState("CONNECTING");
+        try {
+            Thread.sleep(behavior.connectLatencyMs);
+        } catch (InterruptedException e) {
+            setConnectionState("DISCONNECTED");
+            throw e;
+        }
+        setConnectionState("CONNECTED");
+    }
+
+    @Override
+    public byte[] send(byte[] data) throws Exception {
+        if (!isConnected()) {
+            throw new IOException("Not connected to " + getDevice().getAddress());
+        }
+        double fault;
+        long latencyMs;
+        synchronized (random) {
+            fault = random.nextDouble();
+            latencyMs = random.nextDouble() < behavior.slowRate
+                    ? behavior.slowLatencyMs
+                    : Math.max(behavior.latencyMs + Math.round((random.nextDouble() * 2 - 1) * behavior.jitterMs), 0);
+        }
+        frames.incrementAndGet();
+        Thread.sleep(latencyMs);
+        if (fault < behavior.disconnectRate) {
+            drop();
+            throw new IOException("Link to " + getDevice().getAddress() + " lost");
+        }
+        if (fault < behavior.disconnectRate + behavior.errorRate) {
+            errors.incrementAndGet();
+            throw new IOException("Response timeout");
+        }
+        return data.clone();
+    }
+
+    /**
+     * Drops the link as if the peripheral went out of range
+     */
+    public void drop() {
+        disconnects.incrementAndGet();
+        setConnectionState("DISCONNECTED");
+    }
+
+    public BluetoothGatt getGatt() {
+        return gatt;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    public long getDisconnectCount() {
+        return disconnects.get();
+    }
+}
@@ -0,0 +1,132 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  JvmBridge.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs plugins on a plain JVM: stands for the Cordova activity, thread pool and WebView,
+ * and hands each plugin result to the listener of its call instead of the WebView.
+ */
+public class JvmBridge implements CordovaInterface, CordovaWebView {
+
+    public interface ResultListener {
+        /**
+         * Called on the thread that sends the result
+         */
+        void onResult(PluginResult result);
+    }
+
+    private final Activity activity = new Activity();
+    private final ExecutorService threadPool = Executors.newCachedThreadPool();
+    private final Map<String, ResultListener> listeners = new ConcurrentHashMap<>();
+    private final AtomicLong callbackIds = new AtomicLong();
+
+    /**
+     * Initializes a plugin as the Cordova plugin manager does
+     */
+    public <T extends CordovaPlugin> T load(T plugin, CordovaPreferences preferences) {
+        plugin.privateInitialize(plugin.getClass().getSimpleName(), this, this, preferences);
+        return plugin;
+    }
+
+    public CallbackContext newCallbackContext(ResultListener listener) {
+        String callbackId = "JvmBridge" + callbackIds.incrementAndGet();
+        listeners.put(callbackId, listener);
+        return new CallbackContext(callbackId, this);
+    }
+
+    /**
+     * Calls an action and waits for its first result
+     */
+    public PluginResult call(CordovaPlugin plugin, String action, JSONArray args, long timeoutMs) throws Exception {
+        return call(plugin, action, args, null, timeoutMs);
+    }
+
+    /**
+     * Calls an action that keeps its callback, and waits for a result with the given message
+     *
+     * @param message string message of the result to wait for, null for the first result
+     * @return the result with the message, or the first error
+     */
+    public PluginResult call(CordovaPlugin plugin, String action, JSONArray args, String message, long timeoutMs) throws Exception {
+        BlockingQueue<PluginResult> results = new LinkedBlockingQueue<>();
+        plugin.execute(action, args, newCallbackContext(results::add));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (true) {
+            PluginResult result = results.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (result == null) {
+                throw new TimeoutException(action + " did not reply within " + timeoutMs + "ms");
+            }
+            if (message == null || !isOk(result) || message.equals(result.getStrMessage())) {
+                return result;
+            }
+        }
+    }
+
+    public static boolean isOk(PluginResult result) {
+        return result.getStatus() == PluginResult.Status.OK.ordinal();
+    }
+
+    /**
+     * @return the number of callbacks not finished yet, including the kept ones
+     */
+    public int getOpenCallbacks() {
+        return listeners.size();
+    }
+
+    public void shutdown() {
+        threadPool.shutdownNow();
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult result, String callbackId) {
+        ResultListener listener = result.getKeepCallback() ? listeners.get(callbackId) : listeners.remove(callbackId);
+        if (listener != null) {
+            listener.onResult(result);
+        }
+    }
+
+    @Override
+    public void startActivityForResult(CordovaPlugin command, Intent intent, int requestCode) {
+    }
+
+    @Override
+    public Activity getActivity() {
+        return activity;
+    }
+
+    @Override
+    public Context getContext() {
+        return activity;
+    }
+
+    @Override
+    public ExecutorService getThreadPool() {
+        return threadPool;
+    }
+}
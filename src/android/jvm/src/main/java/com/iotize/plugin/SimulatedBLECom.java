@@ -0,0 +1,66 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  SimulatedBLECom.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+
+import com.iotize.android.communication.protocol.ble.BLEProtocol;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BLECom running against FakeBLEProtocol links instead of the Bluetooth stack
+ */
+public class SimulatedBLECom extends BLECom {
+
+    private final FakeBLEProtocol.Behavior behavior;
+    private final Map<String, FakeBLEProtocol> links = new ConcurrentHashMap<>();
+    private final AtomicInteger createdLinks = new AtomicInteger();
+
+    public SimulatedBLECom(FakeBLEProtocol.Behavior behavior) {
+        this.behavior = behavior;
+    }
+
+    @Override
+    protected BLEProtocol createPeripheral(BluetoothDevice device) {
+        createdLinks.incrementAndGet();
+        FakeBLEProtocol link = new FakeBLEProtocol(cordova.getActivity(), device, behavior);
+        links.putIfAbsent(device.getAddress(), link);
+        return link;
+    }
+
+    @Override
+    protected BluetoothGatt getGatt(BLEProtocol peripheral) {
+        return ((FakeBLEProtocol) peripheral).getGatt();
+    }
+
+    @Override
+    protected int getNegotiatedMtu(BLEProtocol peripheral) {
+        return ((FakeBLEProtocol) peripheral).getMtu();
+    }
+
+    /**
+     * @return the first link created for the device, or null
+     */
+    public FakeBLEProtocol getLink(String deviceId) {
+        return links.get(deviceId);
+    }
+
+    public Iterable<FakeBLEProtocol> getLinks() {
+        return links.values();
+    }
+
+    /**
+     * @return the number of links created, including the ones the plugin did not keep
+     */
+    public int getCreatedLinkCount() {
+        return createdLinks.get();
+    }
+}
@@ -0,0 +1,302 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  ConnectionSchedulerTest.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the scheduler on simulated peripherals, with a device queue per device as in the plugin
+ */
+public class ConnectionSchedulerTest {
+
+    private static final long TIMEOUT_MS = 10000;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, DeviceExecutor> executors = new ConcurrentHashMap<>();
+    private final Map<String, CountDownLatch> gates = new ConcurrentHashMap<>();
+    private final List<String> connectOrder = new CopyOnWriteArrayList<>();
+    private final List<String> disconnected = new CopyOnWriteArrayList<>();
+    private final AtomicInteger runningConnects = new AtomicInteger();
+    private final AtomicInteger maxRunningConnects = new AtomicInteger();
+    private final FakeBLEProtocol.Behavior behavior = new FakeBLEProtocol.Behavior();
+    private final Context context = new Context();
+
+    /**
+     * Connects through the fake peripheral. A device with a gate first waits for it and ignores
+     * interrupts meanwhile, like a GATT connect that cannot be stopped.
+     */
+    private final ConnectionScheduler.Connector<FakeBLEProtocol> connector = new ConnectionScheduler.Connector<FakeBLEProtocol>() {
+        @Override
+        public void connect(FakeBLEProtocol link) throws Exception {
+            String deviceId = link.getDevice().getAddress();
+            connectOrder.add(deviceId);
+            int running = runningConnects.incrementAndGet();
+            maxRunningConnects.accumulateAndGet(running, Math::max);
+            try {
+                CountDownLatch gate = gates.get(deviceId);
+                if (gate != null) {
+                    awaitUninterruptibly(gate);
+                }
+                link.connect();
+            } finally {
+                runningConnects.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void disconnect(FakeBLEProtocol link) {
+            disconnected.add(link.getDevice().getAddress());
+            link.drop();
+        }
+
+        @Override
+        public boolean isConnected(FakeBLEProtocol link) {
+            return link.isConnected();
+        }
+    };
+
+    private static class Result implements ConnectionScheduler.Callback {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        volatile boolean connected;
+        volatile Exception error;
+
+        @Override
+        public void onConnected() {
+            connected = true;
+            calls.incrementAndGet();
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            error = e;
+            calls.incrementAndGet();
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("No result", done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (CountDownLatch gate : gates.values()) {
+            gate.countDown();
+        }
+        timer.shutdownNow();
+        for (DeviceExecutor executor : executors.values()) {
+            executor.shutdown();
+        }
+    }
+
+    private ConnectionScheduler<FakeBLEProtocol> scheduler(int maxConcurrentConnects, int maxLiveLinks, long idleTimeoutMs) {
+        ConnectionScheduler.Config config = new ConnectionScheduler.Config();
+        config.maxConcurrentConnects = maxConcurrentConnects;
+        config.maxLiveLinks = maxLiveLinks;
+        config.idleTimeoutMs = idleTimeoutMs;
+        return new ConnectionScheduler<>(config, connector, this::dispatch, timer);
+    }
+
+    private Cancellable dispatch(String deviceId, Runnable job) throws BLEComError {
+        DeviceExecutor executor = executors.computeIfAbsent(
+                deviceId, id -> new DeviceExecutor(id, 16, DeviceExecutor.OverflowPolicy.REJECT));
+        return executor.trySubmit(job);
+    }
+
+    private FakeBLEProtocol link(int i) {
+        return new FakeBLEProtocol(context, new BluetoothDevice(deviceId(i)), behavior);
+    }
+
+    private static String deviceId(int i) {
+        return String.format("AA:BB:CC:00:%02X:%02X", i >> 8, i & 0xFF);
+    }
+
+    private Result connect(ConnectionScheduler<FakeBLEProtocol> scheduler, FakeBLEProtocol link, ConnectionScheduler.Priority priority) {
+        Result result = new Result();
+        scheduler.connect(link.getDevice().getAddress(), link, priority, result);
+        return result;
+    }
+
+    @Test
+    public void concurrentConnectsAreCapped() throws Exception {
+        ConnectionScheduler<FakeBLEProtocol> scheduler = scheduler(2, 20, 0);
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(connect(scheduler, link(i), ConnectionScheduler.Priority.FOREGROUND));
+        }
+        for (Result result : results) {
+            result.await();
+            assertTrue(result.connected);
+        }
+        assertEquals(2, maxRunningConnects.get());
+        // The slot is released just after the callback
+        await(() -> scheduler.getInProgressCount() == 0);
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void foregroundConnectsGoBeforeBackgroundOnes() throws Exception {
+        ConnectionScheduler<FakeBLEProtocol> scheduler = scheduler(1, 20, 0);
+        gates.put(deviceId(0), new CountDownLatch(1));
+        Result first = connect(scheduler, link(0), ConnectionScheduler.Priority.FOREGROUND);
+        List<Result> results = new ArrayList<>();
+        results.add(connect(scheduler, link(1), ConnectionScheduler.Priority.BACKGROUND));
+        results.add(connect(scheduler, link(2), ConnectionScheduler.Priority.BACKGROUND));
+        results.add(connect(scheduler, link(3), ConnectionScheduler.Priority.FOREGROUND));
+        results.add(connect(scheduler, link(4), ConnectionScheduler.Priority.FOREGROUND));
+        gates.get(deviceId(0)).countDown();
+
+        first.await();
+        for (Result result : results) {
+            result.await();
+            assertTrue(result.connected);
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i : new int[]{0, 3, 4, 1, 2}) {
+            expected.add(deviceId(i));
+        }
+        assertEquals(expected, connectOrder);
+    }
+
+    @Test
+    public void leastRecentlyUsedLinkIsEvictedForANewOne() throws Exception {
+        ConnectionScheduler<FakeBLEProtocol> scheduler = scheduler(1, 2, 0);
+        FakeBLEProtocol first = link(0);
+        FakeBLEProtocol second = link(1);
+        connect(scheduler, first, ConnectionScheduler.Priority.FOREGROUND).await();
+        connect(scheduler, second, ConnectionScheduler.Priority.FOREGROUND).await();
+        Thread.sleep(5);
+        scheduler.touch(deviceId(0));
+
+        FakeBLEProtocol third = link(2);
+        Result result = connect(scheduler, third, ConnectionScheduler.Priority.FOREGROUND);
+        result.await();
+
+        assertTrue(result.connected);
+        assertEquals(1, disconnected.size());
+        assertEquals(deviceId(1), disconnected.get(0));
+        assertTrue(first.isConnected());
+        assertFalse(second.isConnected());
+        assertTrue(third.isConnected());
+    }
+
+    @Test
+    public void idleLinksAreEvicted() throws Exception {
+        ConnectionScheduler<FakeBLEProtocol> scheduler = scheduler(2, 20, 200);
+        FakeBLEProtocol idle = link(0);
+        FakeBLEProtocol busy = link(1);
+        connect(scheduler, idle, ConnectionScheduler.Priority.FOREGROUND).await();
+        connect(scheduler, busy, ConnectionScheduler.Priority.FOREGROUND).await();
+
+        // The eviction runs at most every second
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (idle.isConnected() && System.currentTimeMillis() < deadline) {
+            scheduler.touch(deviceId(1));
+            Thread.sleep(20);
+        }
+        assertFalse(idle.isConnected());
+        assertTrue(busy.isConnected());
+        assertEquals(1, disconnected.size());
+        assertEquals(deviceId(0), disconnected.get(0));
+    }
+
+    @Test
+    public void cancelledPendingConnectNeverRuns() throws Exception {
+        ConnectionScheduler<FakeBLEProtocol> scheduler = scheduler(1, 20, 0);
+        gates.put(deviceId(0), new CountDownLatch(1));
+        Result first = connect(scheduler, link(0), ConnectionScheduler.Priority.FOREGROUND);
+        FakeBLEProtocol link = link(1);
+        Result cancelled = new Result();
+        Cancellable connect = scheduler.connect(deviceId(1), link, ConnectionScheduler.Priority.FOREGROUND, cancelled);
+        await(() -> connectOrder.size() == 1);
+
+        assertTrue(connect.cancel());
+        cancelled.await();
+        assertEquals(BLEComError.Code.CANCELLED, ((BLEComError) cancelled.error).getCode());
+        assertFalse(connect.cancel());
+
+        gates.get(deviceId(0)).countDown();
+        first.await();
+        await(() -> scheduler.getInProgressCount() == 0);
+        assertEquals(1, connectOrder.size());
+        assertFalse(link.isConnected());
+        assertEquals(1, cancelled.calls.get());
+    }
+
+    /**
+     * The caller gets the error at once, but the slot is only released once the connect has returned
+     */
+    @Test
+    public void cancelledRunningConnectKeepsItsSlotUntilItReturns() throws Exception {
+        ConnectionScheduler<FakeBLEProtocol> scheduler = scheduler(1, 20, 0);
+        gates.put(deviceId(0), new CountDownLatch(1));
+        Result running = new Result();
+        Cancellable connect = scheduler.connect(deviceId(0), link(0), ConnectionScheduler.Priority.FOREGROUND, running);
+        Result next = connect(scheduler, link(1), ConnectionScheduler.Priority.FOREGROUND);
+        await(() -> connectOrder.size() == 1);
+
+        assertTrue(connect.cancel());
+        running.await();
+        assertEquals(BLEComError.Code.CANCELLED, ((BLEComError) running.error).getCode());
+        Thread.sleep(100);
+        assertEquals(1, scheduler.getInProgressCount());
+        assertEquals(1, connectOrder.size());
+
+        gates.get(deviceId(0)).countDown();
+        next.await();
+        assertTrue(next.connected);
+        assertEquals(1, maxRunningConnects.get());
+        assertEquals(1, running.calls.get());
+        assertNull(next.error);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
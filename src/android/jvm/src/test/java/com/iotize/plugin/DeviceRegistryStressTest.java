@@ -0,0 +1,257 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  DeviceRegistryStressTest.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Races many threads on hundreds of devices. The devices, the thread count and the order
+ * in which each thread visits the devices are fixed by SEED, so a failure can be replayed.
+ */
+public class DeviceRegistryStressTest {
+
+    private static final long SEED = 23;
+    private static final int DEVICES = 500;
+    private static final int THREADS = 8;
+
+    private static String deviceId(int i) {
+        return String.format(Locale.ROOT, "AA:BB:CC:DD:%02X:%02X", (i >> 8) & 0xFF, i & 0xFF);
+    }
+
+    private static List<Integer> shuffledDevices(int thread) {
+        List<Integer> devices = new ArrayList<>(DEVICES);
+        for (int i = 0; i < DEVICES; i++) {
+            devices.add(i);
+        }
+        Collections.shuffle(devices, new Random(SEED * 31 + thread));
+        return devices;
+    }
+
+    /**
+     * Runs the tasks at the same time and returns their results
+     */
+    private static <T> List<T> race(List<Callable<T>> tasks) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(tasks.size());
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (Callable<T> task : tasks) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(60, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentGetOrCreateKeepsOneLinkPerDevice() throws Exception {
+        DeviceRegistry<Object> registry = new DeviceRegistry<>();
+        AtomicInteger created = new AtomicInteger();
+        List<Callable<DeviceRegistry.Device<?>[]>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            List<Integer> order = shuffledDevices(t);
+            tasks.add(() -> {
+                DeviceRegistry.Device<?>[] seen = new DeviceRegistry.Device<?>[DEVICES];
+                for (int i : order) {
+                    seen[i] = registry.getOrCreate(deviceId(i), deviceId -> {
+                        created.incrementAndGet();
+                        return new Object();
+                    });
+                }
+                return seen;
+            });
+        }
+        List<DeviceRegistry.Device<?>[]> results = race(tasks);
+
+        assertEquals(DEVICES, registry.size());
+        assertTrue(created.get() >= DEVICES);
+        for (int i = 0; i < DEVICES; i++) {
+            DeviceRegistry.Device<Object> kept = registry.getDevice(deviceId(i));
+            assertEquals(deviceId(i), kept.deviceId);
+            for (DeviceRegistry.Device<?>[] seen : results) {
+                assertSame("Thread got another link for " + deviceId(i), kept, seen[i]);
+            }
+            assertSame(kept.link, registry.get(deviceId(i)));
+        }
+    }
+
+    @Test
+    public void transitionsFollowTheTable() {
+        DeviceRegistry.State[] states = DeviceRegistry.State.values();
+        for (DeviceRegistry.State from : states) {
+            for (DeviceRegistry.State to : states) {
+                DeviceRegistry.Device<Object> device = new DeviceRegistry.Device<>("AA:BB:CC:DD:EE:FF", null);
+                assertTrue(device.moveTo(from) || from == DeviceRegistry.State.DISCONNECTING);
+                if (device.getState() != from) {
+                    // DISCONNECTING is only reached from a connecting or connected device
+                    assertTrue(device.moveTo(DeviceRegistry.State.CONNECTED));
+                    assertTrue(device.moveTo(from));
+                }
+                assertEquals(from.canMoveTo(to), device.transition(from, to));
+                assertEquals(from.canMoveTo(to) ? to : from, device.getState());
+            }
+        }
+        assertFalse(DeviceRegistry.State.DISCONNECTED.canMoveTo(DeviceRegistry.State.DISCONNECTING));
+        assertFalse(DeviceRegistry.State.DISCONNECTING.canMoveTo(DeviceRegistry.State.CONNECTED));
+    }
+
+    /**
+     * A thread that moves a device from DISCONNECTED to CONNECTING owns it until it moves it back:
+     * no other thread may win the device meanwhile, and its own transitions never fail.
+     */
+    @Test
+    public void onlyOneThreadWinsEachConnect() throws Exception {
+        DeviceRegistry<Object> registry = new DeviceRegistry<>();
+        for (int i = 0; i < DEVICES; i++) {
+            registry.getOrCreate(deviceId(i), deviceId -> new Object());
+        }
+        AtomicIntegerArray owners = new AtomicIntegerArray(DEVICES);
+        int rounds = 20;
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            List<Integer> order = shuffledDevices(t);
+            tasks.add(() -> {
+                int wins = 0;
+                for (int round = 0; round < rounds; round++) {
+                    for (int i : order) {
+                        DeviceRegistry.Device<Object> device = registry.getDevice(deviceId(i));
+                        if (!device.transition(DeviceRegistry.State.DISCONNECTED, DeviceRegistry.State.CONNECTING)) {
+                            continue;
+                        }
+                        wins++;
+                        assertEquals("Two owners for " + deviceId(i), 1, owners.incrementAndGet(i));
+                        assertTrue(device.transition(DeviceRegistry.State.CONNECTING, DeviceRegistry.State.CONNECTED));
+                        assertTrue(device.transition(DeviceRegistry.State.CONNECTED, DeviceRegistry.State.DISCONNECTING));
+                        owners.decrementAndGet(i);
+                        assertTrue(device.transition(DeviceRegistry.State.DISCONNECTING, DeviceRegistry.State.DISCONNECTED));
+                    }
+                }
+                return wins;
+            });
+        }
+        int wins = 0;
+        for (int threadWins : race(tasks)) {
+            wins += threadWins;
+        }
+        assertTrue(wins >= DEVICES * rounds);
+        for (DeviceRegistry.Device<Object> device : registry.getDevices()) {
+            assertEquals(DeviceRegistry.State.DISCONNECTED, device.getState());
+        }
+    }
+
+    /**
+     * Connects every device from several threads at once through the plugin,
+     * each device must end up connected on the link the plugin kept
+     */
+    @Test
+    public void concurrentConnectsThroughThePlugin() throws Exception {
+        int devices = 200;
+        FakeBLEProtocol.Behavior behavior = new FakeBLEProtocol.Behavior();
+        behavior.connectLatencyMs = 1;
+        behavior.seed = SEED;
+        CordovaPreferences preferences = new CordovaPreferences();
+        preferences.set("BLEKnownDevicesCacheSize", 0);
+        preferences.set("BLEMaxConnections", devices);
+        preferences.set("BLEMaxConcurrentConnects", THREADS);
+        JvmBridge bridge = new JvmBridge();
+        SimulatedBLECom plugin = bridge.load(new SimulatedBLECom(behavior), preferences);
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                List<Integer> order = shuffledDevices(t);
+                tasks.add(() -> {
+                    int connected = 0;
+                    for (int i : order) {
+                        if (i >= devices) {
+                            continue;
+                        }
+                        PluginResult result = bridge.call(plugin, "connect", new JSONArray().put(deviceId(i)), "CONNECTED", 30000);
+                        assertTrue(deviceId(i) + ": " + result.getMessage(), JvmBridge.isOk(result));
+                        connected++;
+                    }
+                    return connected;
+                });
+            }
+            assertEquals(Arrays.asList(devices, devices, devices, devices), race(tasks));
+
+            for (int i = 0; i < devices; i++) {
+                PluginResult result = bridge.call(plugin, "isConnected", new JSONArray().put(deviceId(i)), 5000);
+                assertEquals("Kept link of " + deviceId(i) + " is not the connected one", "true", result.getMessage());
+            }
+            PluginResult unknown = bridge.call(plugin, "isConnected", new JSONArray().put(deviceId(devices)), 5000);
+            assertEquals("false", unknown.getMessage());
+        } finally {
+            plugin.onDestroy();
+            bridge.shutdown();
+        }
+    }
+
+    /**
+     * Lookups must not scan the devices. The bound is loose, as a larger registry no longer
+     * fits in the CPU caches; the JMH DeviceRegistryBenchmark gives the actual cost.
+     */
+    @Test
+    public void lookupCostIsFlat() throws Exception {
+        double few = medianLookupNanos(10);
+        double many = medianLookupNanos(1000);
+        assertTrue(String.format(Locale.ROOT, "%.1fns with 10 devices, %.1fns with 1000", few, many), many < few * 10 + 100);
+    }
+
+    private static double medianLookupNanos(int devices) throws BLEComError {
+        DeviceRegistry<Object> registry = new DeviceRegistry<>();
+        String[] ids = new String[devices];
+        for (int i = 0; i < devices; i++) {
+            ids[i] = deviceId(i);
+            registry.getOrCreate(ids[i], deviceId -> new Object());
+        }
+        int lookups = 200000;
+        double[] rounds = new double[15];
+        long sink = 0;
+        for (int round = 0; round < rounds.length; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                sink += registry.getState(ids[i % devices]).ordinal();
+            }
+            rounds[round] = (System.nanoTime() - start) / (double) lookups;
+        }
+        assertEquals(0, sink);
+        Arrays.sort(rounds);
+        return rounds[rounds.length / 2];
+    }
+}
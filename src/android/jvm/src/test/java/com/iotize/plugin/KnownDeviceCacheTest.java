@@ -0,0 +1,127 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  KnownDeviceCacheTest.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KnownDeviceCacheTest {
+
+    private static final String DEVICE_ID = "AA:BB:CC:DD:EE:01";
+    private static final UUID SERVICE = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+    private static final UUID CHARACTERISTIC = UUID.fromString("6e400002-b5a3-f393-e0a9-e50e24dcca9e");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<KnownDeviceCache.Service> layout(int properties) {
+        return Collections.singletonList(new KnownDeviceCache.Service(
+                SERVICE, Collections.singletonList(new KnownDeviceCache.Characteristic(CHARACTERISTIC, properties))));
+    }
+
+    @Test
+    public void savedDevicesAreLoadedBack() throws Exception {
+        File file = new File(folder.getRoot(), "known-devices.bin");
+        KnownDeviceCache cache = new KnownDeviceCache(file, KnownDeviceCache.DEFAULT_MAX_DEVICES);
+        cache.recordConnected(DEVICE_ID, "Tap", 1234);
+        cache.updateLayout(DEVICE_ID, layout(0x0C));
+        cache.recordProfile(DEVICE_ID, "highThroughput", 247);
+        cache.recordConnected("AA:BB:CC:DD:EE:02", null, 5678);
+        cache.save();
+
+        KnownDeviceCache loaded = new KnownDeviceCache(file, KnownDeviceCache.DEFAULT_MAX_DEVICES);
+        loaded.load();
+
+        assertEquals(2, loaded.getAll().size());
+        KnownDeviceCache.KnownDevice device = loaded.get(DEVICE_ID);
+        assertEquals("Tap", device.name);
+        assertEquals(1234, device.lastConnected);
+        assertEquals("highThroughput", device.profile);
+        assertEquals(247, device.mtu);
+        assertEquals(layout(0x0C), device.layout);
+        KnownDeviceCache.KnownDevice other = loaded.get("AA:BB:CC:DD:EE:02");
+        assertNull(other.name);
+        assertEquals("", other.profile);
+        assertTrue(other.layout.isEmpty());
+    }
+
+    @Test
+    public void layoutChangeForgetsTheProfile() {
+        KnownDeviceCache cache = new KnownDeviceCache(new File(folder.getRoot(), "unused.bin"), KnownDeviceCache.DEFAULT_MAX_DEVICES);
+        assertTrue(cache.updateLayout(DEVICE_ID, layout(0x0C)));
+        cache.recordProfile(DEVICE_ID, "highThroughput", 247);
+
+        assertTrue(cache.updateLayout(DEVICE_ID, layout(0x0C)));
+        assertEquals("highThroughput", cache.get(DEVICE_ID).profile);
+
+        assertFalse(cache.updateLayout(DEVICE_ID, layout(0x1C)));
+        KnownDeviceCache.KnownDevice device = cache.get(DEVICE_ID);
+        assertEquals("", device.profile);
+        assertEquals(0, device.mtu);
+        assertEquals(layout(0x1C), device.layout);
+    }
+
+    @Test
+    public void corruptFileIsDeleted() throws Exception {
+        File file = new File(folder.getRoot(), "known-devices.bin");
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        }
+        assertLoadFails(file);
+
+        // A truncated file, as left by a crash during a write without the temporary file
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        KnownDeviceCache.KnownDevice device = new KnownDeviceCache.KnownDevice(DEVICE_ID);
+        device.layout = layout(0x0C);
+        KnownDeviceCache.write(Arrays.asList(device, device), new DataOutputStream(buffer));
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(Arrays.copyOf(buffer.toByteArray(), buffer.size() - 10));
+        }
+        assertLoadFails(file);
+    }
+
+    @Test
+    public void leastRecentlyUsedDeviceIsDropped() {
+        KnownDeviceCache cache = new KnownDeviceCache(new File(folder.getRoot(), "unused.bin"), 2);
+        cache.recordConnected("AA:BB:CC:DD:EE:01", null, 1);
+        cache.recordConnected("AA:BB:CC:DD:EE:02", null, 2);
+        cache.get("AA:BB:CC:DD:EE:01");
+        cache.recordConnected("AA:BB:CC:DD:EE:03", null, 3);
+
+        assertNull(cache.get("AA:BB:CC:DD:EE:02"));
+        assertEquals(2, cache.getAll().size());
+    }
+
+    private static void assertLoadFails(File file) {
+        KnownDeviceCache cache = new KnownDeviceCache(file, KnownDeviceCache.DEFAULT_MAX_DEVICES);
+        try {
+            cache.load();
+            fail("A corrupt file must not load");
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse("A corrupt file must be deleted", file.exists());
+        assertTrue(cache.getAll().isEmpty());
+    }
+}
@@ -0,0 +1,93 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  PendingRequestsTest.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PendingRequestsTest {
+
+    private static final String DEVICE_ID = "AA:BB:CC:DD:EE:01";
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final List<BLEComError> aborted = new CopyOnWriteArrayList<>();
+    private final PendingRequests requests = new PendingRequests(timer, (request, error) -> aborted.add(error));
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    private static JSONObject options(String requestId) {
+        return new JSONObject().put("requestId", requestId);
+    }
+
+    @Test
+    public void cancelRepliesWhenTheWorkCanNoLongerBeCancelled() throws Exception {
+        PendingRequests.Request request = requests.start(DEVICE_ID, "sendRequest", options("read-1"), null);
+        // The work is finishing, it cannot be cancelled but has not completed yet
+        requests.attach(request, () -> false);
+
+        assertTrue(requests.cancel("read-1"));
+        assertEquals(1, aborted.size());
+        assertEquals(BLEComError.Code.CANCELLED, aborted.get(0).getCode());
+        assertFalse("The work must not reply after the abort", requests.complete(request));
+        assertFalse(requests.cancel("read-1"));
+        assertEquals(1, aborted.size());
+    }
+
+    @Test
+    public void cancelDoesNothingOnceTheWorkHasCompleted() throws Exception {
+        PendingRequests.Request request = requests.start(DEVICE_ID, "sendRequest", options("read-1"), null);
+        requests.attach(request, () -> false);
+        assertTrue(requests.complete(request));
+
+        assertFalse(requests.cancel("read-1"));
+        assertTrue(aborted.isEmpty());
+    }
+
+    @Test
+    public void timeoutRepliesOnce() throws Exception {
+        PendingRequests.Request request = requests.start(DEVICE_ID, "sendRequest", new JSONObject().put("timeout", 20), null);
+        requests.attach(request, () -> false);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (aborted.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, aborted.size());
+        assertEquals(BLEComError.Code.TIMEOUT, aborted.get(0).getCode());
+        assertFalse(requests.complete(request));
+    }
+
+    @Test
+    public void duplicateRequestIdIsRejected() throws Exception {
+        PendingRequests.Request request = requests.start(DEVICE_ID, "sendRequest", options("read-1"), null);
+        try {
+            requests.start(DEVICE_ID, "sendRequest", options("read-1"), null);
+            fail("Duplicate requestId accepted");
+        } catch (BLEComError e) {
+            assertEquals(BLEComError.Code.ILLEGAL_ARGUMENT, e.getCode());
+        }
+        // The pending request is still the cancellable one
+        requests.attach(request, () -> true);
+        assertTrue(requests.cancel("read-1"));
+
+        assertNotNull(requests.start(DEVICE_ID, "sendRequest", options("read-1"), null));
+    }
+}
@@ -0,0 +1,126 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  PerformanceProfileTest.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.bluetooth.BluetoothGatt;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PerformanceProfileTest {
+
+    /**
+     * GATT of a peripheral that accepts up to maxMtu, exchangeMs after the request
+     */
+    private static class Gatt extends BluetoothGatt {
+        final AtomicInteger mtu = new AtomicInteger(PerformanceProfile.DEFAULT_MTU);
+        final int maxMtu;
+        final long exchangeMs;
+
+        Gatt(int maxMtu, long exchangeMs) {
+            this.maxMtu = maxMtu;
+            this.exchangeMs = exchangeMs;
+        }
+
+        @Override
+        public boolean requestMtu(int requested) {
+            if (exchangeMs < 0) {
+                // Accepted, but the exchange never completes
+                return true;
+            }
+            new Thread(() -> {
+                try {
+                    Thread.sleep(exchangeMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                mtu.set(Math.min(requested, maxMtu));
+            }).start();
+            return true;
+        }
+    }
+
+    private static PerformanceProfile highThroughput() throws BLEComError {
+        return PerformanceProfile.of(PerformanceProfile.Name.HIGH_THROUGHPUT, PerformanceProfile.HIGH_THROUGHPUT_MTU);
+    }
+
+    @Test
+    public void waitsForTheMtuExchangeAndReportsTheNegotiatedMtu() throws Exception {
+        Gatt gatt = new Gatt(185, 50);
+        long start = System.currentTimeMillis();
+
+        PerformanceProfile.Result result = highThroughput().apply(gatt, gatt.mtu::get);
+
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        assertTrue(result.mtuRequested);
+        assertTrue(result.mtuConfirmed);
+        assertEquals(247, result.requestedMtu);
+        assertEquals(185, result.negotiatedMtu);
+        assertNull(result.warning);
+    }
+
+    @Test
+    public void unreadableMtuIsReported() throws Exception {
+        Gatt gatt = new Gatt(247, 10);
+
+        PerformanceProfile.Result result = highThroughput().apply(gatt, () -> -1);
+
+        assertTrue(result.mtuRequested);
+        assertFalse(result.mtuConfirmed);
+        assertEquals(0, result.negotiatedMtu);
+        assertNotNull(result.warning);
+    }
+
+    @Test
+    public void missingExchangeTimesOut() throws Exception {
+        Gatt gatt = new Gatt(247, -1);
+        long start = System.currentTimeMillis();
+
+        PerformanceProfile.Result result = highThroughput().apply(gatt, gatt.mtu::get);
+
+        assertTrue(System.currentTimeMillis() - start >= PerformanceProfile.MTU_EXCHANGE_TIMEOUT_MS);
+        assertFalse(result.mtuConfirmed);
+        assertEquals(PerformanceProfile.DEFAULT_MTU, result.negotiatedMtu);
+        assertNotNull(result.warning);
+    }
+
+    @Test
+    public void refusedMtuRequestIsReported() throws Exception {
+        BluetoothGatt gatt = new BluetoothGatt() {
+            @Override
+            public boolean requestMtu(int mtu) {
+                return false;
+            }
+        };
+
+        PerformanceProfile.Result result = highThroughput().apply(gatt, () -> PerformanceProfile.DEFAULT_MTU);
+
+        assertFalse(result.mtuRequested);
+        assertFalse(result.mtuConfirmed);
+        assertEquals(PerformanceProfile.DEFAULT_MTU, result.negotiatedMtu);
+        assertNotNull(result.warning);
+    }
+
+    @Test
+    public void profileWithoutMtuDoesNotWait() throws Exception {
+        Gatt gatt = new Gatt(247, -1);
+
+        PerformanceProfile.Result result = PerformanceProfile.of(PerformanceProfile.Name.LOW_POWER, 0).apply(gatt, gatt.mtu::get);
+
+        assertFalse(result.mtuRequested);
+        assertTrue(result.mtuConfirmed);
+        assertEquals(PerformanceProfile.DEFAULT_MTU, result.negotiatedMtu);
+        assertNull(result.warning);
+    }
+}
@@ -0,0 +1,13 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  Manifest.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android;
+
+public final class Manifest {
+    public static final class permission {
+        public static final String ACCESS_COARSE_LOCATION = "android.permission.ACCESS_COARSE_LOCATION";
+    }
+}
@@ -0,0 +1,11 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  SuppressLint.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android.annotation;
+
+public @interface SuppressLint {
+    String[] value();
+}
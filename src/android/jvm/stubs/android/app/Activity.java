@@ -0,0 +1,14 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  Activity.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android.app;
+
+import android.content.Context;
+
+public class Activity extends Context {
+    public static final int RESULT_OK = -1;
+    public static final int RESULT_CANCELED = 0;
+}
@@ -0,0 +1,35 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  BluetoothAdapter.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android.bluetooth;
+
+import java.util.regex.Pattern;
+
+public class BluetoothAdapter {
+    public static final String ACTION_REQUEST_ENABLE = "android.bluetooth.adapter.action.REQUEST_ENABLE";
+    private static final Pattern ADDRESS = Pattern.compile("([0-9A-F]{2}:){5}[0-9A-F]{2}");
+
+    private volatile boolean enabled = true;
+
+    public static boolean checkBluetoothAddress(String address) {
+        return address != null && ADDRESS.matcher(address).matches();
+    }
+
+    public BluetoothDevice getRemoteDevice(String address) {
+        if (!checkBluetoothAddress(address)) {
+            throw new IllegalArgumentException(address + " is not a valid Bluetooth address");
+        }
+        return new BluetoothDevice(address);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+}
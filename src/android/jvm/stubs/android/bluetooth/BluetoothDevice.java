@@ -0,0 +1,29 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  BluetoothDevice.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android.bluetooth;
+
+public class BluetoothDevice {
+    private final String address;
+    private final String name;
+
+    public BluetoothDevice(String address) {
+        this(address, null);
+    }
+
+    public BluetoothDevice(String address, String name) {
+        this.address = address;
+        this.name = name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
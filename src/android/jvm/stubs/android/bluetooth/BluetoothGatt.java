@@ -0,0 +1,28 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  BluetoothGatt.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android.bluetooth;
+
+import java.util.Collections;
+import java.util.List;
+
+public class BluetoothGatt {
+    public static final int CONNECTION_PRIORITY_BALANCED = 0;
+    public static final int CONNECTION_PRIORITY_HIGH = 1;
+    public static final int CONNECTION_PRIORITY_LOW_POWER = 2;
+
+    public boolean requestConnectionPriority(int connectionPriority) {
+        return true;
+    }
+
+    public boolean requestMtu(int mtu) {
+        return true;
+    }
+
+    public List<BluetoothGattService> getServices() {
+        return Collections.emptyList();
+    }
+}
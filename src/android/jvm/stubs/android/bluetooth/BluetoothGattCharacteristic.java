@@ -0,0 +1,19 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  BluetoothGattCharacteristic.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android.bluetooth;
+
+import java.util.UUID;
+
+public class BluetoothGattCharacteristic {
+    public UUID getUuid() {
+        return null;
+    }
+
+    public int getProperties() {
+        return 0;
+    }
+}
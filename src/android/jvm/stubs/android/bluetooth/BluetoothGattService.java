@@ -0,0 +1,21 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  BluetoothGattService.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android.bluetooth;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public class BluetoothGattService {
+    public UUID getUuid() {
+        return null;
+    }
+
+    public List<BluetoothGattCharacteristic> getCharacteristics() {
+        return Collections.emptyList();
+    }
+}
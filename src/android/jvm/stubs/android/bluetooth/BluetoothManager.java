@@ -0,0 +1,15 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  BluetoothManager.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android.bluetooth;
+
+public class BluetoothManager {
+    private final BluetoothAdapter adapter = new BluetoothAdapter();
+
+    public BluetoothAdapter getAdapter() {
+        return adapter;
+    }
+}
@@ -0,0 +1,35 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  Context.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android.content;
+
+import android.bluetooth.BluetoothManager;
+import android.content.pm.PackageManager;
+
+import java.io.File;
+
+public class Context {
+    public static final String BLUETOOTH_SERVICE = "bluetooth";
+
+    private final PackageManager packageManager = new PackageManager();
+    private final BluetoothManager bluetoothManager = new BluetoothManager();
+
+    public PackageManager getPackageManager() {
+        return packageManager;
+    }
+
+    public Object getSystemService(String name) {
+        return BLUETOOTH_SERVICE.equals(name) ? bluetoothManager : null;
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public File getFilesDir() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+}
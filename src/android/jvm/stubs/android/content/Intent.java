@@ -0,0 +1,19 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  Intent.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android.content;
+
+public class Intent {
+    private final String action;
+
+    public Intent(String action) {
+        this.action = action;
+    }
+
+    public String getAction() {
+        return action;
+    }
+}
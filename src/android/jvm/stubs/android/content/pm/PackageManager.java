@@ -0,0 +1,17 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  PackageManager.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android.content.pm;
+
+public class PackageManager {
+    public static final String FEATURE_BLUETOOTH_LE = "android.hardware.bluetooth_le";
+    public static final int PERMISSION_GRANTED = 0;
+    public static final int PERMISSION_DENIED = -1;
+
+    public boolean hasSystemFeature(String name) {
+        return true;
+    }
+}
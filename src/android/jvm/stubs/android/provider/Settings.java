@@ -0,0 +1,10 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  Settings.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package android.provider;
+
+public class Settings {
+}
@@ -0,0 +1,14 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  OnConnectionStatusChangeListener.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.android.communication.client.impl.listener;
+
+/**
+ * The plugin only uses the names of the states, with toString()
+ */
+public interface OnConnectionStatusChangeListener {
+    void onConnectionStateChange(Object newState, Object oldState);
+}
@@ -0,0 +1,76 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  BLEProtocol.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.android.communication.protocol.ble;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+
+import com.iotize.android.communication.client.impl.listener.OnConnectionStatusChangeListener;
+
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Link that connects at once and echoes the frames it is sent.
+ * Subclasses simulate the peripherals, and call setConnectionState for the state changes.
+ */
+public class BLEProtocol {
+    private final BluetoothDevice device;
+    private final CopyOnWriteArrayList<OnConnectionStatusChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private String connectionState = "DISCONNECTED";
+
+    public BLEProtocol(Context context, BluetoothDevice device) {
+        this.device = device;
+    }
+
+    public BluetoothDevice getDevice() {
+        return device;
+    }
+
+    public void connect() throws Exception {
+        setConnectionState("CONNECTING");
+        setConnectionState("CONNECTED");
+    }
+
+    public void disconnect() throws Exception {
+        setConnectionState("DISCONNECTING");
+        setConnectionState("DISCONNECTED");
+    }
+
+    public byte[] send(byte[] data) throws Exception {
+        if (!isConnected()) {
+            throw new IOException("Not connected to " + device.getAddress());
+        }
+        return data;
+    }
+
+    public boolean isConnected() {
+        return "CONNECTED".equals(getConnectionState());
+    }
+
+    public synchronized String getConnectionState() {
+        return connectionState;
+    }
+
+    public void addOnConnectionStatusChangeListener(OnConnectionStatusChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    protected void setConnectionState(String newState) {
+        String oldState;
+        synchronized (this) {
+            oldState = connectionState;
+            if (oldState.equals(newState)) {
+                return;
+            }
+            connectionState = newState;
+        }
+        for (OnConnectionStatusChangeListener listener : listeners) {
+            listener.onConnectionStateChange(newState, oldState);
+        }
+    }
+}
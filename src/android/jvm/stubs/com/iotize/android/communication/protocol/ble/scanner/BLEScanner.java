@@ -0,0 +1,65 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  BLEScanner.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.android.communication.protocol.ble.scanner;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+
+import com.iotize.android.device.api.device.scanner.IOnDeviceDiscovered;
+
+/**
+ * Scanner that finds nothing by itself, the devices are reported with discover
+ */
+public class BLEScanner {
+
+    public static class BLEScanData {
+        private final BluetoothDevice device;
+        private final int rssi;
+
+        public BLEScanData(BluetoothDevice device, int rssi) {
+            this.device = device;
+            this.rssi = rssi;
+        }
+
+        public BluetoothDevice getDevice() {
+            return device;
+        }
+
+        public int getRssi() {
+            return rssi;
+        }
+    }
+
+    private volatile IOnDeviceDiscovered<BLEScanData> callback;
+    private volatile boolean enabled;
+
+    public BLEScanner(Context context) {
+    }
+
+    public void start() {
+        enabled = true;
+    }
+
+    public void stop() {
+        enabled = false;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setOnDeviceDiscoveredCallback(IOnDeviceDiscovered<BLEScanData> callback) {
+        this.callback = callback;
+    }
+
+    public void discover(BLEScanData data) {
+        IOnDeviceDiscovered<BLEScanData> current = callback;
+        if (enabled && current != null) {
+            current.onDeviceDiscovered(data);
+        }
+    }
+}
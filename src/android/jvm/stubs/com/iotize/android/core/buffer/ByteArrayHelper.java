@@ -0,0 +1,10 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  ByteArrayHelper.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.android.core.buffer;
+
+public class ByteArrayHelper {
+}
@@ -0,0 +1,15 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  IOnDeviceDiscovered.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.android.device.api.device.scanner;
+
+public interface IOnDeviceDiscovered<T> {
+    void onDeviceDiscovered(T device);
+
+    void onDeviceLost(T device);
+
+    void onScanFailed(Throwable error);
+}
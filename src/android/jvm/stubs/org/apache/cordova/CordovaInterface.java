@@ -0,0 +1,23 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  CordovaInterface.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package org.apache.cordova;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+
+import java.util.concurrent.ExecutorService;
+
+public interface CordovaInterface {
+    void startActivityForResult(CordovaPlugin command, Intent intent, int requestCode);
+
+    Activity getActivity();
+
+    Context getContext();
+
+    ExecutorService getThreadPool();
+}
@@ -0,0 +1,45 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  CordovaPreferences.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package org.apache.cordova;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Preferences of config.xml, names are case insensitive
+ */
+public class CordovaPreferences {
+    private final Map<String, String> prefs = new HashMap<>();
+
+    public void set(String name, String value) {
+        prefs.put(name.toLowerCase(Locale.ENGLISH), value);
+    }
+
+    public void set(String name, boolean value) {
+        set(name, Boolean.toString(value));
+    }
+
+    public void set(String name, int value) {
+        set(name, Integer.toString(value));
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        String value = prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    public int getInteger(String name, int defaultValue) {
+        String value = prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value == null ? defaultValue : Integer.decode(value);
+    }
+
+    public String getString(String name, String defaultValue) {
+        String value = prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value == null ? defaultValue : value;
+    }
+}
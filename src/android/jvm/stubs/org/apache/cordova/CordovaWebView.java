@@ -0,0 +1,14 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  CordovaWebView.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package org.apache.cordova;
+
+/**
+ * Only the part of the WebView used to deliver plugin results
+ */
+public interface CordovaWebView {
+    void sendPluginResult(PluginResult cr, String callbackId);
+}
@@ -0,0 +1,23 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  LOG.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package org.apache.cordova;
+
+import android.util.Log;
+
+public class LOG {
+    public static void d(String tag, String s) {
+        Log.d(tag, s);
+    }
+
+    public static void w(String tag, String s) {
+        Log.w(tag, s);
+    }
+
+    public static void e(String tag, String s) {
+        Log.e(tag, s);
+    }
+}
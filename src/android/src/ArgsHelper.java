@@ -7,10 +7,18 @@
 
 package com.iotize.plugin;
 
+import android.util.Base64;
+
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 class ArgsHelper {
+    /**
+     * Shared by the requests without options, must not be modified
+     */
+    private static final JSONObject NO_OPTIONS = new JSONObject();
+
     private final JSONArray args;
 
     public ArgsHelper(JSONArray args) {
@@ -27,4 +35,42 @@ class ArgsHelper {
             throw new Error("INTERNAL ERROR", e);
         }
     }
+
+    public JSONArray getJSONArray(int i) throws BLEComError {
+        if (this.args == null || i >= this.args.length()){
+            throw new BLEComError(BLEComError.Code.ILLEGAL_ARGUMENT, "Missing argument n°" + (i+1));
+        }
+        JSONArray array = this.args.optJSONArray(i);
+        if (array == null) {
+            throw BLEComError.illegalArgument("Argument n°" + (i+1) + " should be an array");
+        }
+        return array;
+    }
+
+    /**
+     * @return the options object at the given index, or an empty read only object if it was not given
+     */
+    public JSONObject optOptions(int i) {
+        JSONObject options = this.args == null ? null : this.args.optJSONObject(i);
+        return options == null ? NO_OPTIONS : options;
+    }
+
+    public String optString(int i) {
+        if (this.args == null || this.args.isNull(i)){
+            return null;
+        }
+        return this.args.optString(i);
+    }
+
+    /**
+     * Cordova sends ArrayBuffer arguments as base64 strings
+     */
+    public byte[] getArrayBuffer(int i) throws BLEComError {
+        String base64 = this.getString(i);
+        try {
+            return Base64.decode(base64, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            throw BLEComError.illegalArgument("Argument n°" + (i+1) + " should be an ArrayBuffer");
+        }
+    }
 }
@@ -0,0 +1,217 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  AutoReconnect.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Reconnect policy of a device whose link dropped: attempts are spaced by an
+ * exponential backoff with jitter, and stop after a maximum number of attempts.
+ * The delays are waited on a timer, only the attempts run on the device queue.
+ * Requests made while the link reconnects are parked, then replayed once the link is back
+ * or failed if it does not come back.
+ */
+class AutoReconnect {
+
+    public interface ErrorHandler {
+        void onError(BLEComError error);
+    }
+
+    /**
+     * Request parked while the link reconnects
+     */
+    public class ParkedRequest implements Cancellable {
+        private final Runnable work;
+        private final ErrorHandler errorHandler;
+        private volatile Cancellable queued;
+
+        ParkedRequest(Runnable work, ErrorHandler errorHandler) {
+            this.work = work;
+            this.errorHandler = errorHandler;
+        }
+
+        /**
+         * Queues the request on the device queue, without waiting for room.
+         * Called on the device worker, which would wait for itself if the queue blocks.
+         */
+        public void replay(DeviceExecutor executor) {
+            try {
+                queued = executor.trySubmit(work);
+            } catch (BLEComError e) {
+                errorHandler.onError(e);
+            }
+        }
+
+        public void fail(BLEComError error) {
+            errorHandler.onError(error);
+        }
+
+        @Override
+        public boolean cancel() {
+            synchronized (AutoReconnect.this) {
+                if (parked.remove(this)) {
+                    return true;
+                }
+            }
+            Cancellable current = queued;
+            return current != null && current.cancel();
+        }
+    }
+
+    public static class Options {
+        int maxAttempts = 5;
+        long initialDelayMs = 500;
+        long maxDelayMs = 10000;
+        double multiplier = 2;
+        /**
+         * Part of the delay randomized, so that devices dropped together do not reconnect together
+         */
+        double jitter = 0.2;
+
+        /**
+         * @param value true for the default options, or an object overriding some of them
+         * @return the options or null if auto reconnect is not enabled
+         */
+        public static Options fromJSON(Object value) {
+            if (value instanceof Boolean) {
+                return (Boolean) value ? new Options() : null;
+            }
+            if (!(value instanceof JSONObject)) {
+                return null;
+            }
+            JSONObject json = (JSONObject) value;
+            Options options = new Options();
+            options.maxAttempts = Math.max(json.optInt("maxAttempts", options.maxAttempts), 1);
+            options.initialDelayMs = Math.max(json.optLong("initialDelayMs", options.initialDelayMs), 0);
+            options.maxDelayMs = Math.max(json.optLong("maxDelayMs", options.maxDelayMs), options.initialDelayMs);
+            options.multiplier = Math.max(json.optDouble("multiplier", options.multiplier), 1);
+            options.jitter = Math.min(Math.max(json.optDouble("jitter", options.jitter), 0), 1);
+            return options;
+        }
+    }
+
+    private final Options options;
+    private final String deviceId;
+    private final int maxParked;
+    private final Random random = new Random();
+    private final List<ParkedRequest> parked = new ArrayList<>();
+    private volatile boolean reconnecting;
+    private volatile ScheduledFuture<?> nextAttempt;
+    private volatile Cancellable work;
+    private volatile Exception lastError;
+
+    /**
+     * @param maxParked maximum number of requests parked while the link reconnects, the capacity of the device queue
+     */
+    public AutoReconnect(Options options, String deviceId, int maxParked) {
+        this.options = options;
+        this.deviceId = deviceId;
+        this.maxParked = maxParked;
+    }
+
+    public int getMaxAttempts() {
+        return options.maxAttempts;
+    }
+
+    /**
+     * @param attempt from 0
+     */
+    public long getDelayMs(int attempt) {
+        double delay = Math.min(options.initialDelayMs * Math.pow(options.multiplier, attempt), options.maxDelayMs);
+        double factor = 1 - options.jitter + 2 * options.jitter * random.nextDouble();
+        return (long) (delay * factor);
+    }
+
+    public boolean isReconnecting() {
+        return reconnecting;
+    }
+
+    /**
+     * @return false if a reconnect is already running
+     */
+    public synchronized boolean start() {
+        if (reconnecting) {
+            return false;
+        }
+        reconnecting = true;
+        return true;
+    }
+
+    public void setNextAttempt(ScheduledFuture<?> nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    public void setWork(Cancellable work) {
+        this.work = work;
+    }
+
+    /**
+     * @return the error of the last failed attempt, or null
+     */
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(Exception lastError) {
+        this.lastError = lastError;
+    }
+
+    /**
+     * Parks a request until the running reconnect ends
+     *
+     * @return the parked request, or null if the link is not reconnecting and the request can be queued
+     * @throws BLEComError if too many requests are parked
+     */
+    public synchronized Cancellable park(Runnable work, ErrorHandler errorHandler) throws BLEComError {
+        if (!reconnecting) {
+            return null;
+        }
+        if (parked.size() >= maxParked) {
+            throw BLEComError.queueFull(deviceId, maxParked);
+        }
+        ParkedRequest request = new ParkedRequest(work, errorHandler);
+        parked.add(request);
+        return request;
+    }
+
+    /**
+     * Ends the reconnect. Requests made from now on are queued as usual.
+     *
+     * @return the requests parked during the reconnect, in order, to replay or to fail
+     */
+    public synchronized List<ParkedRequest> finish() {
+        reconnecting = false;
+        nextAttempt = null;
+        work = null;
+        lastError = null;
+        List<ParkedRequest> requests = new ArrayList<>(parked);
+        parked.clear();
+        return requests;
+    }
+
+    /**
+     * Stops the running reconnect, if any
+     *
+     * @return the requests parked during the reconnect, to fail
+     */
+    public List<ParkedRequest> cancel() {
+        ScheduledFuture<?> scheduled = nextAttempt;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        Cancellable current = work;
+        if (current != null) {
+            current.cancel();
+        }
+        return finish();
+    }
+}
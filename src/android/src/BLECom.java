@@ -11,6 +11,9 @@ import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
 import android.content.Context;
 import android.content.Intent;
@@ -19,10 +22,8 @@ import android.provider.Settings;
 import android.util.Log;
 
 import com.iotize.android.communication.protocol.ble.BLEProtocol;
-import com.iotize.android.communication.protocol.ble.DeviceManager;
 import com.iotize.android.communication.protocol.ble.scanner.BLEScanner;
 import com.iotize.android.core.buffer.ByteArrayHelper;
-import com.iotize.android.core.util.Helper;
 import com.iotize.android.device.api.device.scanner.IOnDeviceDiscovered;
 
 import org.apache.cordova.CallbackContext;
@@ -32,6 +33,20 @@ import org.apache.cordova.CordovaWebView;
 import org.apache.cordova.LOG;
 import org.apache.cordova.PermissionHelper;
 import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static android.Manifest.permission.ACCESS_COARSE_LOCATION;
 
@@ -40,6 +55,8 @@ public class BLECom extends CordovaPlugin {
     private static final String CONNECT = "connect";
     private static final String DISCONNECT = "disConnect";
     private static final String SEND_REQUEST = "sendRequest";
+    private static final String SEND_BINARY_REQUEST = "sendBinaryRequest";
+    private static final String SEND_REQUESTS = "sendRequests";
     private static final String GET_LAST_ERROR = "getLastError";
     private static final String START_SCAN = "startScan";
     private static final String STOP_SCAN = "stopScan";
@@ -47,26 +64,162 @@ public class BLECom extends CordovaPlugin {
     private static final String CHECK_AVAILABLE = "checkAvailable";
     private static final String IS_CONNECTED  = "isConnected";
     private static final String ENABLE = "enable";
+    private static final String GET_QUEUE_STATS = "getQueueStats";
+    private static final String GET_DISCOVERED_DEVICES = "getDiscoveredDevices";
+    private static final String GET_STATS = "getStats";
+    private static final String SUBSCRIBE = "subscribe";
+    private static final String UNSUBSCRIBE = "unsubscribe";
+    private static final String CANCEL = "cancel";
+    private static final String SET_PERFORMANCE_PROFILE = "setPerformanceProfile";
+    private static final String START_TRANSFER = "startTransfer";
+    private static final String RESUME_TRANSFER = "resumeTransfer";
+    private static final String GET_KNOWN_DEVICES = "getKnownDevices";
+    private static final String FORGET_KNOWN_DEVICE = "forgetKnownDevice";
+    private static final String SUBSCRIBE_EVENTS = "subscribeEvents";
+    private static final String UNSUBSCRIBE_EVENTS = "unsubscribeEvents";
+    private static final String DUMP_TRACE = "dumpTrace";
+
+    // preferences
+    private static final String PREF_REQUEST_QUEUE_CAPACITY = "BLERequestQueueCapacity";
+    private static final String PREF_REQUEST_QUEUE_OVERFLOW_POLICY = "BLERequestQueueOverflowPolicy";
+    private static final String PREF_MAX_CONCURRENT_CONNECTS = "BLEMaxConcurrentConnects";
+    private static final String PREF_MAX_CONNECTIONS = "BLEMaxConnections";
+    private static final String PREF_IDLE_TIMEOUT_MS = "BLEIdleTimeoutMs";
+    private static final String PREF_RESPONSE_CACHE_SIZE = "BLEResponseCacheSize";
+    private static final String PREF_KNOWN_DEVICES_CACHE_SIZE = "BLEKnownDevicesCacheSize";
+    private static final String PREF_WARM_START = "BLEWarmStart";
+    private static final String PREF_WARM_START_DEVICES = "BLEWarmStartDevices";
+    private static final String PREF_TRACE_SIZE = "BLETraceSize";
+    private static final String KNOWN_DEVICES_FILE = "iotize-ble-known-devices.bin";
+    private static final int DEFAULT_REQUEST_QUEUE_CAPACITY = 32;
+    private static final long TRANSFER_REQUEUE_DELAY_MS = 20;
+
+    // request options
+    private static final String OPTION_CACHE_TTL_MS = "cacheTtlMs";
 
     private static final int REQUEST_ENABLE_BLUETOOTH = 1;
     private static final int REQUEST_SCAN_PERMISSIONS = 2;
 
     private static final String TAG = "BLECom";
-    private DeviceManager<BLEProtocol> peripherals;
+    private final DeviceRegistry<BLEProtocol> peripherals = new DeviceRegistry<>();
+    private final Map<String, DeviceExecutor> executors = new ConcurrentHashMap<>();
+    private int requestQueueCapacity = DEFAULT_REQUEST_QUEUE_CAPACITY;
+    private DeviceExecutor.OverflowPolicy requestQueueOverflowPolicy = DeviceExecutor.OverflowPolicy.REJECT;
+    private ConnectionScheduler<BLEProtocol> connectionScheduler;
+    private final ConnectionStateRegistry connectionStates = new ConnectionStateRegistry(this::onConnectionStateChange, this::onStatePublished);
+    private final Map<String, AutoReconnect> autoReconnects = new ConcurrentHashMap<>();
+    private final PluginMetrics metrics = new PluginMetrics();
+    private final Map<String, PollingStream> streams = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final PendingRequests pendingRequests = new PendingRequests(timer, this::onRequestAborted);
+    private ResponseCache responseCache;
+    private final Map<String, BulkTransfer> transfers = new ConcurrentHashMap<>();
+    private final AtomicLong transferIds = new AtomicLong();
+    private KnownDeviceCache knownDevices;
+    private volatile EventChannel events;
+    private FlightRecorder recorder = new FlightRecorder(FlightRecorder.DEFAULT_CAPACITY);
     private BluetoothAdapter bluetoothAdapter;
-    private PluginResponse enableBluetoothCallback;
-    private PluginResponse pluginResponseDiscoverDevice;
-    private PluginResponse permissionCallback;
-    private BLEScanner scanner;
+    private volatile PluginResponse enableBluetoothCallback;
+    private volatile PluginResponse pluginResponseDiscoverDevice;
+    private volatile PluginResponse permissionCallback;
+    private volatile BLEScanner scanner;
     private IOnDeviceDiscovered<BLEScanner.BLEScanData> onDeviceDiscoveredCallback;
+    /**
+     * Options of the last startScan, applied once the scan permission is granted
+     */
+    private volatile JSONObject scanOptions = new JSONObject();
+    private volatile ScanFilterSpec scanFilter;
+    private volatile ScanDutyCycle.Options scanCycleOptions = new ScanDutyCycle.Options();
+    private volatile ScanSession scanSession = new ScanSession(
+            null,
+            new DiscoveredDeviceCache(DiscoveredDeviceCache.DEFAULT_TTL_MS, DiscoveredDeviceCache.DEFAULT_MAX_SIZE),
+            null,
+            false
+    );
+    private volatile ScanDutyCycle scanCycle;
+    private final ScanDutyCycle.StartThrottle scanThrottle = new ScanDutyCycle.StartThrottle();
+
+    /**
+     * State of the current scan, created by startScan and read by the scanner thread.
+     * It is replaced as a whole, so that the scanner thread never sees a half updated session.
+     */
+    private static final class ScanSession {
+        final ScanFilterSpec filter;
+        final DiscoveredDeviceCache devices;
+        final ScanResultCoalescer coalescer;
+        /**
+         * With the events scan option, scan results only go to the event channel
+         */
+        final boolean deliveredAsEvents;
+
+        ScanSession(ScanFilterSpec filter, DiscoveredDeviceCache devices, ScanResultCoalescer coalescer, boolean deliveredAsEvents) {
+            this.filter = filter;
+            this.devices = devices;
+            this.coalescer = coalescer;
+            this.deliveredAsEvents = deliveredAsEvents;
+        }
+    }
 
     public void initialize(CordovaInterface cordova, CordovaWebView webView) {
         super.initialize(cordova, webView);
 
-        this.peripherals = new DeviceManager<>();
+        this.recorder = new FlightRecorder(preferences.getInteger(PREF_TRACE_SIZE, FlightRecorder.DEFAULT_CAPACITY));
+        this.requestQueueCapacity = preferences.getInteger(PREF_REQUEST_QUEUE_CAPACITY, DEFAULT_REQUEST_QUEUE_CAPACITY);
+        this.requestQueueOverflowPolicy = DeviceExecutor.OverflowPolicy.parse(
+                preferences.getString(PREF_REQUEST_QUEUE_OVERFLOW_POLICY, "reject")
+        );
+        this.connectionScheduler = createConnectionScheduler();
+        this.responseCache = new ResponseCache(
+                Math.max(preferences.getInteger(PREF_RESPONSE_CACHE_SIZE, ResponseCache.DEFAULT_MAX_ENTRIES), 1),
+                metrics
+        );
+        int knownDevicesCacheSize = preferences.getInteger(PREF_KNOWN_DEVICES_CACHE_SIZE, KnownDeviceCache.DEFAULT_MAX_DEVICES);
+        if (knownDevicesCacheSize > 0) {
+            this.knownDevices = new KnownDeviceCache(new File(cordova.getActivity().getFilesDir(), KNOWN_DEVICES_FILE), knownDevicesCacheSize);
+            timer.execute(this::loadKnownDevices);
+        }
+        boolean warmStart = preferences.getBoolean(PREF_WARM_START, false);
+        metrics.startup().start(warmStart);
+        if (warmStart) {
+            cordova.getThreadPool().execute(this::warmUp);
+        }
         Log.d(TAG, "Initializing IoTizeBLE Plugin");
     }
 
+    private ConnectionScheduler<BLEProtocol> createConnectionScheduler() {
+        ConnectionScheduler.Config config = new ConnectionScheduler.Config();
+        config.maxConcurrentConnects = Math.max(preferences.getInteger(PREF_MAX_CONCURRENT_CONNECTS, config.maxConcurrentConnects), 1);
+        config.maxLiveLinks = Math.max(preferences.getInteger(PREF_MAX_CONNECTIONS, config.maxLiveLinks), 1);
+        config.idleTimeoutMs = preferences.getInteger(PREF_IDLE_TIMEOUT_MS, (int) config.idleTimeoutMs);
+        return new ConnectionScheduler<>(
+                config,
+                new ConnectionScheduler.Connector<BLEProtocol>() {
+                    @Override
+                    public void connect(BLEProtocol link) throws Exception {
+                        link.connect();
+                    }
+
+                    @Override
+                    public void disconnect(BLEProtocol link) throws Exception {
+                        // Evicted links must not reconnect by themselves
+                        for (String deviceId : autoReconnects.keySet()) {
+                            if (peripherals.getIfExists(deviceId) == link) {
+                                stopAutoReconnect(deviceId);
+                            }
+                        }
+                        link.disconnect();
+                    }
+
+                    @Override
+                    public boolean isConnected(BLEProtocol link) {
+                        return link.isConnected();
+                    }
+                },
+                this::tryExecuteAsync,
+                timer
+        );
+    }
+
     @Override
     public void onStart() {
         super.onStart();
@@ -77,6 +230,33 @@ public class BLECom extends CordovaPlugin {
         super.onStop();
     }
 
+    @Override
+    public void onDestroy() {
+        for (PollingStream stream : streams.values()) {
+            stream.stop();
+        }
+        streams.clear();
+        for (String deviceId : autoReconnects.keySet()) {
+            stopAutoReconnect(deviceId);
+        }
+        for (BulkTransfer transfer : transfers.values()) {
+            transfer.cancel();
+        }
+        transfers.clear();
+        events = null;
+        ScanDutyCycle cycle = scanCycle;
+        if (cycle != null) {
+            cycle.stop();
+        }
+        timer.shutdownNow();
+        for (DeviceExecutor executor : executors.values()) {
+            executor.shutdown();
+        }
+        executors.clear();
+        connectionScheduler.shutdown();
+        super.onDestroy();
+    }
+
     @SuppressLint("MissingPermission")
     public boolean execute(String action, JSONArray args, final CallbackContext callbackContext) {
 
@@ -97,12 +277,16 @@ public class BLECom extends CordovaPlugin {
                     break;
                 case START_SCAN:
                     Log.d(TAG, START_SCAN);
+                    this.scanOptions = argsHelper.optOptions(0);
+                    this.scanFilter = ScanFilterSpec.fromJSON(scanOptions.optJSONObject("filter"));
+                    this.scanCycleOptions = ScanDutyCycle.Options.fromJSON(scanOptions);
                     this.startScan(pluginResponse);
                     break;
                 case CONNECT: {
                     Log.d(TAG, CONNECT);
                     String macAddress = argsHelper.getString(0);
-                    this.connect(pluginResponse, macAddress);
+                    JSONObject options = argsHelper.optOptions(1);
+                    this.connect(pluginResponse, macAddress, options);
                     break;
                 }
                 case DISCONNECT: {
@@ -115,11 +299,27 @@ public class BLECom extends CordovaPlugin {
                     Log.d(TAG, GET_LAST_ERROR);
                     this.getLastError(pluginResponse);
                     break;
-                case SEND_REQUEST:
+                case SEND_REQUEST: {
                     String deviceId = argsHelper.getString(0);
                     String hexString = argsHelper.getString(1);
-                    this.sendRequest(pluginResponse, deviceId, hexString);
+                    JSONObject options = argsHelper.optOptions(2);
+                    this.sendRequest(pluginResponse, deviceId, hexString, options);
+                    break;
+                }
+                case SEND_REQUESTS: {
+                    String deviceId = argsHelper.getString(0);
+                    JSONArray hexFrames = argsHelper.getJSONArray(1);
+                    JSONObject options = argsHelper.optOptions(2);
+                    this.sendRequests(pluginResponse, deviceId, hexFrames, options.optBoolean("stopOnError", false));
+                    break;
+                }
+                case SEND_BINARY_REQUEST: {
+                    String deviceId = argsHelper.getString(0);
+                    byte[] data = argsHelper.getArrayBuffer(1);
+                    JSONObject options = argsHelper.optOptions(2);
+                    this.sendBinaryRequest(pluginResponse, deviceId, data, options);
                     break;
+                }
                 case CHECK_AVAILABLE:
                 case IS_ENABLED:
                     pluginResponse.success(bluetoothAdapter.isEnabled());
@@ -127,7 +327,8 @@ public class BLECom extends CordovaPlugin {
                     break;
                 case IS_CONNECTED: {
                     String macAddress = argsHelper.getString(0);
-                    boolean isConnected = peripherals.get(macAddress).isConnected();
+                    BLEProtocol peripheral = peripherals.getIfExists(macAddress);
+                    boolean isConnected = peripheral != null && peripheral.isConnected();
                     pluginResponse.success(isConnected);
                     break;
                 }
@@ -139,22 +340,193 @@ public class BLECom extends CordovaPlugin {
                     Intent intent = new Intent(BluetoothAdapter.ACTION_REQUEST_ENABLE);
                     cordova.startActivityForResult(this, intent, REQUEST_ENABLE_BLUETOOTH);
                     break;
+                case GET_DISCOVERED_DEVICES:
+                    pluginResponse.success(JSONBuilder.toJSONArray(
+                            scanSession.devices.snapshot(System.currentTimeMillis())
+                    ));
+                    break;
+                case SUBSCRIBE: {
+                    String deviceId = argsHelper.getString(0);
+                    String hexString = argsHelper.getString(1);
+                    JSONObject options = argsHelper.optOptions(2);
+                    this.subscribe(pluginResponse, deviceId, hexStringToByteArray(hexString), options);
+                    break;
+                }
+                case UNSUBSCRIBE: {
+                    String deviceId = argsHelper.getString(0);
+                    this.unsubscribe(deviceId, argsHelper.optString(1));
+                    pluginResponse.success();
+                    break;
+                }
+                case SUBSCRIBE_EVENTS: {
+                    EventChannel.Options options = EventChannel.Options.fromJSON(argsHelper.optOptions(0));
+                    EventChannel previous = events;
+                    events = new EventChannel(options, timer, pluginResponse);
+                    if (previous != null) {
+                        previous.close();
+                    }
+                    break;
+                }
+                case DUMP_TRACE: {
+                    pluginResponse.success(JSONBuilder.toJSONObject(recorder));
+                    break;
+                }
+                case UNSUBSCRIBE_EVENTS: {
+                    EventChannel channel = events;
+                    events = null;
+                    if (channel != null) {
+                        channel.close();
+                    }
+                    pluginResponse.success();
+                    break;
+                }
+                case SET_PERFORMANCE_PROFILE: {
+                    String deviceId = argsHelper.getString(0);
+                    PerformanceProfile profile = PerformanceProfile.fromJSON(argsHelper.optOptions(1));
+                    if (profile == null) {
+                        throw BLEComError.illegalArgument("Missing performance profile");
+                    }
+                    this.setPerformanceProfile(pluginResponse, deviceId, profile);
+                    break;
+                }
+                case START_TRANSFER: {
+                    String deviceId = argsHelper.getString(0);
+                    byte[] data = argsHelper.getArrayBuffer(1);
+                    JSONObject options = argsHelper.optOptions(2);
+                    this.startTransfer(pluginResponse, deviceId, data, options);
+                    break;
+                }
+                case RESUME_TRANSFER: {
+                    String transferId = argsHelper.getString(0);
+                    this.resumeTransfer(pluginResponse, transferId);
+                    break;
+                }
+                case GET_KNOWN_DEVICES:
+                    if (knownDevices == null) {
+                        pluginResponse.success(new JSONArray());
+                        break;
+                    }
+                    // After the cache has been loaded by the timer thread
+                    timer.execute(() -> pluginResponse.success(JSONBuilder.toKnownDevices(knownDevices.getAll())));
+                    break;
+                case FORGET_KNOWN_DEVICE: {
+                    String deviceId = argsHelper.getString(0);
+                    if (knownDevices != null) {
+                        timer.execute(() -> {
+                            knownDevices.remove(deviceId);
+                            saveKnownDevices();
+                        });
+                    }
+                    pluginResponse.success();
+                    break;
+                }
+                case CANCEL: {
+                    String requestId = argsHelper.getString(0);
+                    pluginResponse.success(pendingRequests.cancel(requestId) || cancelTransfer(requestId));
+                    break;
+                }
+                case GET_STATS: {
+                    JSONObject options = argsHelper.optOptions(0);
+                    pluginResponse.success(JSONBuilder.toJSONObject(metrics));
+                    if (options.optBoolean("reset", false)) {
+                        metrics.reset();
+                    }
+                    break;
+                }
+                case GET_QUEUE_STATS: {
+                    String deviceId = argsHelper.optString(0);
+                    this.getQueueStats(pluginResponse, deviceId);
+                    break;
+                }
                 default:
                     throw BLEComError.illegalAction("Illegal action " + action);
             }
             return true;
         }
         catch (BLEComError err) {
-            pluginResponse.error(err);
+            fail(pluginResponse, null, action, err);
             return false;
         }
         catch (Throwable err) {
-            pluginResponse.error(BLEComError.unknownError(err));
+            fail(pluginResponse, null, action, BLEComError.unknownError(err));
             return false;
         }
     }
 
-    private void setupBluetoothAdapter() throws BLEComError {
+    /**
+     * Resolves the adapter and builds the scanner before the first action, off the UI thread,
+     * then connects the devices listed in the BLEWarmStartDevices preference (comma separated)
+     */
+    private void warmUp() {
+        long start = System.nanoTime();
+        try {
+            setupBluetoothAdapter();
+            getScanner();
+        } catch (Throwable e) {
+            Log.w(TAG, "Warm start failed, setup will be done by the first action", e);
+            return;
+        }
+        metrics.startup().warmUp.set(System.nanoTime() - start);
+        for (String macAddress : preferences.getString(PREF_WARM_START_DEVICES, "").split(",")) {
+            macAddress = macAddress.trim().toUpperCase();
+            if (macAddress.isEmpty()) {
+                continue;
+            }
+            try {
+                warmConnect(macAddress);
+            } catch (Throwable e) {
+                Log.w(TAG, "Warm start connect to " + macAddress + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * Background connect without caller: a later connect finds the link already connected
+     */
+    private void warmConnect(String macAddress) throws BLEComError {
+        if (!bluetoothAdapter.isEnabled()) {
+            return;
+        }
+        DeviceRegistry.Device<BLEProtocol> device = peripherals.getOrCreate(macAddress, this::createPeripheral);
+        if (!device.transition(DeviceRegistry.State.DISCONNECTED, DeviceRegistry.State.CONNECTING)) {
+            return;
+        }
+        BLEProtocol peripheral = device.link;
+        PerformanceProfile profile = getKnownProfile(macAddress);
+        long connectStart = System.nanoTime();
+        connectionScheduler.connect(
+                macAddress,
+                peripheral,
+                ConnectionScheduler.Priority.BACKGROUND,
+                new ConnectionScheduler.Callback() {
+                    @Override
+                    public void onConnected() {
+                        long connectNanos = System.nanoTime() - connectStart;
+                        metrics.device(macAddress).connect.record(connectNanos);
+                        recorder.request(macAddress, CONNECT, connectNanos, 0);
+                        // Before the profile, a layout change would forget the profile applied by this connect
+                        rememberDevice(macAddress, peripheral);
+                        if (profile != null) {
+                            try {
+                                applyPerformanceProfile(peripheral, macAddress, profile);
+                            } catch (BLEComError e) {
+                                Log.w(TAG, "Cannot apply performance profile to " + macAddress, e);
+                            }
+                        }
+                        device.transition(DeviceRegistry.State.CONNECTING, DeviceRegistry.State.CONNECTED);
+                        Log.d(TAG, "Warm start connected to " + macAddress);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        device.transition(DeviceRegistry.State.CONNECTING, DeviceRegistry.State.DISCONNECTED);
+                        recordFailure(macAddress, CONNECT, e instanceof BLEComError ? (BLEComError) e : BLEComError.connectionError(e));
+                    }
+                }
+        );
+    }
+
+    private synchronized void setupBluetoothAdapter() throws BLEComError {
         if (bluetoothAdapter == null) {
             Activity activity = cordova.getActivity();
             boolean hardwareSupportsBLE = activity.getApplicationContext()
@@ -185,14 +557,125 @@ public class BLECom extends CordovaPlugin {
             return;
         }
 
-        if (scanner == null){
-            this.initBLEScanner();
+        BLEScanner scanner = getScanner();
+        this.setupScanSession();
+        ScanDutyCycle previousCycle = scanCycle;
+        if (previousCycle != null) {
+            previousCycle.stop();
         }
-        scanner.start();
+        ScanDutyCycle cycle = new ScanDutyCycle(
+                scanCycleOptions,
+                new ScanDutyCycle.Scanner() {
+                    @Override
+                    public void start() {
+                        scanner.start();
+                    }
+
+                    @Override
+                    public void stop() {
+                        scanner.stop();
+                    }
+                },
+                timer,
+                scanThrottle,
+                this::onScanSessionEnded
+        );
+        scanCycle = cycle;
+        cycle.start();
         pluginResponse.newResult("Ok");
     }
 
 
+    /**
+     * Scan results are coalesced (and lost devices reported) only when requested,
+     * so that callers expecting one device per result keep working
+     */
+    private void setupScanSession() {
+        ScanSession previous = scanSession;
+        if (previous.coalescer != null) {
+            previous.coalescer.stop();
+        }
+        JSONObject options = scanOptions;
+        DiscoveredDeviceCache deviceCache = new DiscoveredDeviceCache(
+                options.optLong("deviceTtlMs", DiscoveredDeviceCache.DEFAULT_TTL_MS),
+                Math.max(options.optInt("maxDevices", DiscoveredDeviceCache.DEFAULT_MAX_SIZE), 1)
+        );
+        boolean deliveredAsEvents = options.optBoolean("events", false);
+        if (!options.optBoolean("coalesce", false)) {
+            scanSession = new ScanSession(scanFilter, deviceCache, null, deliveredAsEvents);
+            return;
+        }
+        ScanResultCoalescer coalescer = new ScanResultCoalescer(
+                ScanResultCoalescer.Options.fromJSON(options),
+                deviceCache,
+                timer,
+                new ScanResultCoalescer.Listener() {
+                    @Override
+                    public void onDevicesChanged(List<DiscoveredDevice> devices) {
+                        EventChannel channel = events;
+                        if (channel != null) {
+                            for (DiscoveredDevice device : devices) {
+                                channel.scan(device.getAddress(), device.getName(), device.getRssi());
+                            }
+                            metrics.startup().recordFirst(metrics.startup().firstScanResult);
+                        }
+                        PluginResponse response = pluginResponseDiscoverDevice;
+                        if (response != null && !isScanDeliveredAsEvents(deliveredAsEvents)) {
+                            long start = System.nanoTime();
+                            response.newResult(JSONBuilder.toJSONArray(devices));
+                            metrics.scan().delivery.record(System.nanoTime() - start);
+                            metrics.scan().messages.incrementAndGet();
+                            metrics.scan().devices.addAndGet(devices.size());
+                            metrics.startup().recordFirst(metrics.startup().firstScanResult);
+                        }
+                    }
+
+                    @Override
+                    public void onDevicesLost(List<DiscoveredDevice> devices) {
+                        EventChannel channel = events;
+                        if (channel != null) {
+                            for (DiscoveredDevice device : devices) {
+                                channel.lost(device.getAddress());
+                            }
+                        }
+                        PluginResponse response = pluginResponseDiscoverDevice;
+                        if (response != null && !isScanDeliveredAsEvents(deliveredAsEvents)) {
+                            response.newResult(JSONBuilder.toLostDevicesEvent(devices));
+                        }
+                    }
+                }
+        );
+        scanSession = new ScanSession(scanFilter, deviceCache, coalescer, deliveredAsEvents);
+        coalescer.start();
+    }
+
+    /**
+     * With the events scan option, scan results only go to the event channel, when it is open
+     */
+    private boolean isScanDeliveredAsEvents(boolean deliveredAsEvents) {
+        EventChannel channel = events;
+        return deliveredAsEvents && channel != null && channel.accepts(EventChannel.Type.SCAN);
+    }
+
+    /**
+     * A time-boxed scan session ended: the scan callback receives the session statistics
+     */
+    private void onScanSessionEnded(ScanDutyCycle.Session session) {
+        metrics.scan().lastSession = session;
+        PluginResponse response = pluginResponseDiscoverDevice;
+        if (response != null) {
+            response.newResult(JSONBuilder.toScanEndedEvent(session));
+        }
+    }
+
+    private synchronized BLEScanner getScanner() {
+        if (scanner == null){
+            this.initBLEScanner();
+        }
+        return scanner;
+    }
+
+    @SuppressLint("MissingPermission")
     private void initBLEScanner() {
         Log.d(TAG, "initBLEScanner()");
         scanner = new BLEScanner(cordova.getContext());
@@ -200,12 +683,46 @@ public class BLECom extends CordovaPlugin {
             this.onDeviceDiscoveredCallback = new IOnDeviceDiscovered<BLEScanner.BLEScanData>() {
                 @Override
                 public void onDeviceDiscovered(BLEScanner.BLEScanData device) {
-                    Log.d(TAG, "Device discovered: " + device);
-                    if (pluginResponseDiscoverDevice != null) {
+                    BluetoothDevice bluetoothDevice = device.getDevice();
+                    ScanSession session = scanSession;
+                    ScanFilterSpec filter = session.filter;
+                    if (filter != null && !filter.matches(
+                            bluetoothDevice.getAddress(), bluetoothDevice.getName(), device.getRssi())) {
+                        return;
+                    }
+                    if (isDebugLoggable()) {
+                        Log.d(TAG, "Device discovered: " + device);
+                    }
+                    ScanDutyCycle cycle = scanCycle;
+                    if (cycle != null) {
+                        cycle.onDevice(bluetoothDevice.getAddress());
+                    }
+                    ScanResultCoalescer coalescer = session.coalescer;
+                    if (coalescer != null) {
+                        coalescer.onAdvertisement(bluetoothDevice.getAddress(), bluetoothDevice.getName(), device.getRssi());
+                    }
+                    else if (pluginResponseDiscoverDevice != null) {
+                        session.devices.update(
+                                bluetoothDevice.getAddress(), bluetoothDevice.getName(), device.getRssi(),
+                                1, System.currentTimeMillis()
+                        );
+                        EventChannel channel = events;
+                        if (channel != null) {
+                            channel.scan(bluetoothDevice.getAddress(), bluetoothDevice.getName(), device.getRssi());
+                            metrics.startup().recordFirst(metrics.startup().firstScanResult);
+                        }
+                        if (isScanDeliveredAsEvents(session.deliveredAsEvents)) {
+                            return;
+                        }
                         try {
+                            long start = System.nanoTime();
                             pluginResponseDiscoverDevice.newResult(
                                     JSONBuilder.toJSONObject(device)
                             );
+                            metrics.scan().delivery.record(System.nanoTime() - start);
+                            metrics.scan().messages.incrementAndGet();
+                            metrics.scan().devices.incrementAndGet();
+                            metrics.startup().recordFirst(metrics.startup().firstScanResult);
                         } catch (Throwable e) {
                             pluginResponseDiscoverDevice.newResult(BLEComError.internalError(e));
                         }
@@ -217,6 +734,7 @@ public class BLECom extends CordovaPlugin {
 
                 @Override
                 public void onDeviceLost(BLEScanner.BLEScanData bleScanData) {
+                    // Lost devices are detected by the discovered device cache TTL
                     Log.w(TAG, "Device lost" + bleScanData);
                 }
 
@@ -233,6 +751,20 @@ public class BLECom extends CordovaPlugin {
     @SuppressLint("NewApi")
     private void stopScan(PluginResponse pluginResponse) {
         pluginResponseDiscoverDevice = null;
+        ScanSession session = scanSession;
+        if (session.coalescer != null) {
+            session.coalescer.stop();
+            // The discovered devices stay available to getDiscoveredDevices
+            scanSession = new ScanSession(session.filter, session.devices, null, session.deliveredAsEvents);
+        }
+        ScanDutyCycle cycle = scanCycle;
+        scanCycle = null;
+        if (cycle != null && cycle.isRunning()) {
+            // The scanner may be paused between two scan windows
+            metrics.scan().lastSession = cycle.stop();
+            pluginResponse.success();
+            return;
+        }
         if (scanner == null || !scanner.isEnabled()){
             Log.w(TAG, "Scanner is not running");
             pluginResponse.success();
@@ -243,79 +775,917 @@ public class BLECom extends CordovaPlugin {
     }
 
     private void getLastError(PluginResponse pluginResponse) {
-        throw new Error("Not implemented yet");
+        FlightRecorder.Event failure = recorder.getLastError();
+        if (failure == null) {
+            pluginResponse.success();
+            return;
+        }
+        pluginResponse.success(JSONBuilder.toJSONObject(failure));
     }
 
-    private void disconnect(final PluginResponse pluginResponse, String macAddress) {
+    /**
+     * Runs outside of the device queue, so that a send that hangs and ignores interrupts cannot keep
+     * the link from being torn down. The requests still queued then fail as the link is down.
+     */
+    private void disconnect(final PluginResponse pluginResponse, String macAddress) throws BLEComError {
         BLEProtocol peripheral = peripherals.get(macAddress);
 
-        executeAsync(() -> {
+        responseCache.invalidate(macAddress);
+        stopAutoReconnect(macAddress);
+        peripherals.moveTo(macAddress, DeviceRegistry.State.DISCONNECTING);
+        cordova.getThreadPool().execute(() -> {
+            long start = System.nanoTime();
             try {
+                unsubscribe(macAddress);
                 peripheral.disconnect();
+                long disconnectNanos = System.nanoTime() - start;
+                metrics.device(macAddress).disconnect.record(disconnectNanos);
+                recorder.request(macAddress, DISCONNECT, disconnectNanos, 0);
+                connectionStates.complete(macAddress, "DISCONNECTED");
                 pluginResponse.success();
             } catch (Exception e) {
-                pluginResponse.error(new BLEComError(BLEComError.Code.DISCONNECTION_ERROR, e));
+                fail(pluginResponse, macAddress, DISCONNECT, new BLEComError(BLEComError.Code.DISCONNECTION_ERROR, e));
             }
         });
+        connectionScheduler.remove(macAddress);
     }
 
-    private void sendRequest(PluginResponse pluginResponse, String deviceId, String hexString) throws BLEComError {
+    private void sendRequest(PluginResponse pluginResponse, String deviceId, String hexString, JSONObject options) throws BLEComError {
         if (deviceId == null) {
             throw new IllegalArgumentException("Device id must not be null");
         }
 
+        long decodeStart = System.nanoTime();
         byte[] data = hexStringToByteArray(hexString);
-        Log.d(TAG, SEND_REQUEST + " " + deviceId + " " + hexString);
+        long decodeNanos = System.nanoTime() - decodeStart;
+        if (isDebugLoggable()) {
+            Log.d(TAG, SEND_REQUEST + " " + deviceId + " " + hexString);
+        }
+
+        if (options.optLong(OPTION_CACHE_TTL_MS, 0) > 0) {
+            sendCachedRequest(pluginResponse, deviceId, SEND_REQUEST, data, options, false);
+            return;
+        }
+        responseCache.invalidate(deviceId);
+        BLEProtocol peripheral = peripherals.get(deviceId);
+        PendingRequests.Request request = pendingRequests.start(deviceId, SEND_REQUEST, options, pluginResponse);
+        Cancellable work;
+        try {
+            work = executeRequest(deviceId, () -> {
+                try {
+                    byte[] response = send(peripheral, deviceId, data);
+                    if (!pendingRequests.complete(request)) {
+                        return;
+                    }
+                    long encodeStart = System.nanoTime();
+                    pluginResponse.success(response);
+                    metrics.device(deviceId).serialization.record(decodeNanos + System.nanoTime() - encodeStart);
+                } catch (Exception e) {
+                    if (pendingRequests.complete(request)) {
+                        fail(pluginResponse, deviceId, SEND_REQUEST, BLEComError.requestError(e, deviceId, data));
+                    }
+                }
+            }, error -> {
+                if (pendingRequests.complete(request)) {
+                    fail(pluginResponse, deviceId, SEND_REQUEST, error);
+                }
+            });
+        } catch (BLEComError | RuntimeException e) {
+            if (!pendingRequests.discard(request)) {
+                return;
+            }
+            throw e;
+        }
+        pendingRequests.attach(request, work);
+    }
+
+    private void sendBinaryRequest(PluginResponse pluginResponse, String deviceId, byte[] data, JSONObject options) throws BLEComError {
+        if (deviceId == null) {
+            throw new IllegalArgumentException("Device id must not be null");
+        }
+
+        if (isDebugLoggable()) {
+            Log.d(TAG, SEND_BINARY_REQUEST + " " + deviceId + " " + data.length + " bytes");
+        }
+
+        if (options.optLong(OPTION_CACHE_TTL_MS, 0) > 0) {
+            sendCachedRequest(pluginResponse, deviceId, SEND_BINARY_REQUEST, data, options, true);
+            return;
+        }
+        responseCache.invalidate(deviceId);
+        BLEProtocol peripheral = peripherals.get(deviceId);
+        PendingRequests.Request request = pendingRequests.start(deviceId, SEND_BINARY_REQUEST, options, pluginResponse);
+        Cancellable work;
+        try {
+            work = executeRequest(deviceId, () -> {
+                try {
+                    byte[] response = send(peripheral, deviceId, data);
+                    if (!pendingRequests.complete(request)) {
+                        return;
+                    }
+                    long encodeStart = System.nanoTime();
+                    pluginResponse.successBinary(response);
+                    metrics.device(deviceId).serialization.record(System.nanoTime() - encodeStart);
+                } catch (Exception e) {
+                    if (pendingRequests.complete(request)) {
+                        fail(pluginResponse, deviceId, SEND_BINARY_REQUEST, BLEComError.requestError(e, deviceId, data));
+                    }
+                }
+            }, error -> {
+                if (pendingRequests.complete(request)) {
+                    fail(pluginResponse, deviceId, SEND_BINARY_REQUEST, error);
+                }
+            });
+        } catch (BLEComError | RuntimeException e) {
+            if (!pendingRequests.discard(request)) {
+                return;
+            }
+            throw e;
+        }
+        pendingRequests.attach(request, work);
+    }
+
+    /**
+     * Sends a read that the caller declared idempotent with the cacheTtlMs option.
+     * It is answered from the response cache, or shares the response of the identical request in flight.
+     */
+    private void sendCachedRequest(PluginResponse pluginResponse, String deviceId, String operation, byte[] data, JSONObject options, boolean binary) throws BLEComError {
+        BLEProtocol peripheral = peripherals.get(deviceId);
+        PendingRequests.Request request = pendingRequests.start(deviceId, operation, options, pluginResponse);
+        Cancellable work;
+        try {
+            work = responseCache.request(
+                    deviceId,
+                    data,
+                    options.optLong(OPTION_CACHE_TTL_MS, 0),
+                    new ResponseCache.Waiter() {
+                        @Override
+                        public void onResponse(byte[] response) {
+                            if (!pendingRequests.complete(request)) {
+                                return;
+                            }
+                            if (binary) {
+                                pluginResponse.successBinary(response);
+                            } else {
+                                pluginResponse.success(response);
+                            }
+                        }
+
+                        @Override
+                        public void onError(BLEComError error) {
+                            if (pendingRequests.complete(request)) {
+                                fail(pluginResponse, deviceId, operation, error);
+                            }
+                        }
+                    },
+                    flight -> executeRequest(deviceId, () -> {
+                        try {
+                            responseCache.complete(flight, send(peripheral, deviceId, data));
+                        } catch (Exception e) {
+                            responseCache.fail(flight, BLEComError.requestError(e, deviceId, data));
+                        }
+                    }, error -> responseCache.fail(flight, error))
+            );
+        } catch (RuntimeException e) {
+            if (!pendingRequests.discard(request)) {
+                return;
+            }
+            throw e;
+        }
+        pendingRequests.attach(request, work);
+    }
+
+    /**
+     * Send all frames one after the other and reply once with one result per frame.
+     * If stopOnError is set, the result array ends with the first failing frame.
+     */
+    private void sendRequests(PluginResponse pluginResponse, String deviceId, JSONArray hexFrames, boolean stopOnError) throws BLEComError {
+        if (deviceId == null) {
+            throw new IllegalArgumentException("Device id must not be null");
+        }
+
+        final byte[][] frames = new byte[hexFrames.length()][];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = hexStringToByteArray(hexFrames.optString(i));
+        }
+        if (isDebugLoggable()) {
+            Log.d(TAG, SEND_REQUESTS + " " + deviceId + " " + frames.length + " frames");
+        }
+
+        responseCache.invalidate(deviceId);
+        BLEProtocol peripheral = peripherals.get(deviceId);
+        executeRequest(deviceId, () -> {
+            JSONArray results = new JSONArray();
+            for (byte[] frame : frames) {
+                try {
+                    byte[] response = send(peripheral, deviceId, frame);
+                    results.put(JSONBuilder.toBatchResult(HexCodec.encode(response)));
+                } catch (Exception e) {
+                    BLEComError error = BLEComError.requestError(e, deviceId, frame);
+                    recordFailure(deviceId, SEND_REQUESTS, error);
+                    results.put(JSONBuilder.toBatchResult(error));
+                    if (stopOnError) {
+                        break;
+                    }
+                }
+            }
+            long encodeStart = System.nanoTime();
+            pluginResponse.success(results);
+            metrics.device(deviceId).serialization.record(System.nanoTime() - encodeStart);
+        }, error -> fail(pluginResponse, deviceId, SEND_REQUESTS, error));
+    }
+
+    /**
+     * Sends a buffer of length prefixed frames with progress events on the kept callback.
+     * The IoTize library splits each frame at the MTU and waits for its response,
+     * so the transfer saves the bridge round trip of each frame.
+     */
+    private void startTransfer(PluginResponse pluginResponse, String deviceId, byte[] data, JSONObject options) throws BLEComError {
+        String transferId = options.optString("transferId", "");
+        if (transferId.isEmpty()) {
+            transferId = "transfer-" + transferIds.incrementAndGet();
+        }
+        BulkTransfer transfer = BulkTransfer.create(transferId, deviceId, data, BulkTransfer.Options.fromJSON(options));
+        if (transfers.putIfAbsent(transferId, transfer) != null) {
+            throw BLEComError.illegalArgument("Transfer " + transferId + " already exists");
+        }
+        Log.d(TAG, START_TRANSFER + " " + deviceId + " " + transferId + " " + transfer.getTotalFrames() + " frames");
+
+        responseCache.invalidate(deviceId);
+        transfer.setPluginResponse(pluginResponse);
+        pluginResponse.newResult(JSONBuilder.toJSONObject(transfer, false));
+        try {
+            runTransfer(transfer);
+        } catch (BLEComError e) {
+            transfers.remove(transferId, transfer);
+            throw e;
+        }
+    }
+
+    /**
+     * Continues a transfer stopped by an error, from the frame that failed
+     */
+    private void resumeTransfer(PluginResponse pluginResponse, String transferId) throws BLEComError {
+        BulkTransfer transfer = transfers.get(transferId);
+        if (transfer == null) {
+            throw BLEComError.illegalArgument("Unknown transfer " + transferId);
+        }
+        if (transfer.isRunning()) {
+            throw BLEComError.illegalArgument("Transfer " + transferId + " is already running");
+        }
+        transfer.setExpiry(null);
+        if (transfers.get(transferId) != transfer) {
+            // Released meanwhile
+            throw BLEComError.illegalArgument("Unknown transfer " + transferId);
+        }
+        Log.d(TAG, RESUME_TRANSFER + " " + transferId + " from frame " + transfer.getSentFrames());
+
+        responseCache.invalidate(transfer.getDeviceId());
+        transfer.setPluginResponse(pluginResponse);
+        pluginResponse.newResult(JSONBuilder.toJSONObject(transfer, false));
+        runTransfer(transfer);
+    }
+
+    private boolean cancelTransfer(String transferId) {
+        BulkTransfer transfer = transfers.remove(transferId);
+        if (transfer == null) {
+            return false;
+        }
+        transfer.cancel();
+        return true;
+    }
+
+    private void releaseTransfer(BulkTransfer transfer) {
+        if (!transfer.isRunning() && transfers.remove(transfer.getId(), transfer)) {
+            Log.d(TAG, "Transfer " + transfer.getId() + " released after " + transfer.getResumeTtlMs() + "ms");
+        }
+    }
+
+    private void runTransfer(BulkTransfer transfer) throws BLEComError {
+        BLEProtocol peripheral = peripherals.get(transfer.getDeviceId());
+        transfer.setRunning(true);
+        try {
+            executeAsync(transfer.getDeviceId(), () -> continueTransfer(transfer, peripheral));
+        } catch (BLEComError e) {
+            transfer.setRunning(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Queues the rest of a transfer from the plugin timer, which must not wait for room in the queue:
+     * while the queue is full the transfer is queued again a bit later.
+     */
+    private void requeueTransfer(BulkTransfer transfer, BLEProtocol peripheral, long delayMs) {
+        String deviceId = transfer.getDeviceId();
+        scheduleOnTimer(() -> {
+            try {
+                tryExecuteAsync(deviceId, () -> continueTransfer(transfer, peripheral));
+            } catch (BLEComError e) {
+                if (!getExecutor(deviceId).isShutdown()) {
+                    requeueTransfer(transfer, peripheral, TRANSFER_REQUEUE_DELAY_MS);
+                    return;
+                }
+                transfer.setRunning(false);
+                fail(transfer.getPluginResponse(), deviceId, START_TRANSFER, e);
+            }
+        }, delayMs);
+    }
+
+    /**
+     * Runs on the device queue. Slices are sent back to back while no other request waits,
+     * otherwise the transfer is queued again behind the waiting requests.
+     */
+    private void continueTransfer(BulkTransfer transfer, BLEProtocol peripheral) {
+        String deviceId = transfer.getDeviceId();
+        PluginResponse pluginResponse = transfer.getPluginResponse();
+        try {
+            while (transfer.sendSlice(frame -> send(peripheral, deviceId, frame))) {
+                if (transfer.isProgressDue(System.currentTimeMillis())) {
+                    pluginResponse.newResult(JSONBuilder.toJSONObject(transfer, false));
+                }
+                if (getExecutor(deviceId).getQueueDepth() > 0) {
+                    // Not queued from the device worker, which would wait for itself if the queue blocks
+                    requeueTransfer(transfer, peripheral, 0);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            // Kept for resumeTransfer, released if it is not resumed in time
+            transfer.setRunning(false);
+            transfer.setExpiry(scheduleOnTimer(() -> releaseTransfer(transfer), transfer.getResumeTtlMs()));
+            fail(pluginResponse, deviceId, START_TRANSFER, BLEComError.requestError(e, deviceId, null));
+            return;
+        }
+        transfer.setRunning(false);
+        transfers.remove(transfer.getId(), transfer);
+        if (transfer.isCancelled()) {
+            fail(pluginResponse, deviceId, START_TRANSFER, BLEComError.cancelled(transfer.getId()));
+            return;
+        }
+        pluginResponse.success(JSONBuilder.toJSONObject(transfer, true));
+    }
+
+    /**
+     * Streams the responses to a frame sent periodically to the device, until unsubscribe or disconnect.
+     * BLEProtocol only exposes request/response exchanges, so the stream polls the device natively
+     * instead of relying on characteristic notifications.
+     */
+    private void subscribe(PluginResponse pluginResponse, String deviceId, byte[] frame, JSONObject options) throws BLEComError {
+        BLEProtocol peripheral = peripherals.get(deviceId);
+        PollingStream stream = new PollingStream(
+                deviceId,
+                frame,
+                PollingStream.Options.fromJSON(options),
+                (data, callback) -> tryExecuteAsync(deviceId, () -> {
+                    try {
+                        callback.onResponse(send(peripheral, deviceId, data));
+                    } catch (Exception e) {
+                        BLEComError error = BLEComError.requestError(e, deviceId, data);
+                        recordFailure(deviceId, SUBSCRIBE, error);
+                        callback.onError(error);
+                    }
+                }),
+                pluginResponse
+        );
+        PollingStream previous = streams.put(deviceId, stream);
+        if (previous != null) {
+            previous.stop();
+            previous.getPluginResponse().success();
+        }
+        stream.start(timer);
+    }
+
+    private void unsubscribe(String deviceId) {
+        PollingStream stream = streams.remove(deviceId);
+        if (stream != null) {
+            stream.stop();
+            stream.getPluginResponse().success();
+        }
+    }
+
+    /**
+     * @param streamId only stops the stream of the device if it has this id, any stream if null or empty
+     */
+    private void unsubscribe(String deviceId, String streamId) {
+        if (streamId == null || streamId.isEmpty()) {
+            unsubscribe(deviceId);
+            return;
+        }
+        PollingStream stream = streams.get(deviceId);
+        if (stream != null && streamId.equals(stream.getStreamId()) && streams.remove(deviceId, stream)) {
+            stream.stop();
+            stream.getPluginResponse().success();
+        }
+    }
+
+    /**
+     * Ends the stream of a device whose link dropped, with an error instead of polling a dead link
+     */
+    private void failStream(String deviceId, BLEComError error) {
+        PollingStream stream = streams.remove(deviceId);
+        if (stream != null) {
+            stream.stop();
+            fail(stream.getPluginResponse(), deviceId, SUBSCRIBE, error);
+        }
+    }
+
+    private void pauseStream(String deviceId, boolean paused) {
+        PollingStream stream = streams.get(deviceId);
+        if (stream != null) {
+            stream.setPaused(paused);
+        }
+    }
+
+    private byte[] send(BLEProtocol peripheral, String deviceId, byte[] data) throws Exception {
+        PluginMetrics.DeviceMetrics deviceMetrics = metrics.device(deviceId);
+        deviceMetrics.requests.incrementAndGet();
+        deviceMetrics.bytesOut.addAndGet(data.length);
+        long start = System.nanoTime();
+        byte[] response = peripheral.send(data);
+        long sendNanos = System.nanoTime() - start;
+        deviceMetrics.send.record(sendNanos);
+        recorder.request(deviceId, "send", sendNanos, data.length);
+        if (response != null) {
+            deviceMetrics.bytesIn.addAndGet(response.length);
+        }
+        metrics.startup().recordFirst(metrics.startup().firstResponse);
+        return response;
+    }
+
+    private void recordFailure(String deviceId, String operation, BLEComError error) {
+        metrics.recordError(deviceId);
+        recorder.error(deviceId, operation, error.getCode(), error.getMessage());
+    }
+
+    private void fail(PluginResponse pluginResponse, String deviceId, String operation, BLEComError error) {
+        recordFailure(deviceId, operation, error);
+        EventChannel channel = events;
+        if (channel != null) {
+            channel.error(deviceId, operation, error);
+        }
+        pluginResponse.error(error);
+    }
 
+    private void setPerformanceProfile(PluginResponse pluginResponse, String deviceId, PerformanceProfile profile) throws BLEComError {
         BLEProtocol peripheral = peripherals.get(deviceId);
-        executeAsync(() -> {
+        executeAsync(deviceId, () -> {
             try {
-                byte[] response = peripheral.send(data);
-                pluginResponse.success(response);
-            } catch (Exception e) {
-                pluginResponse.error(BLEComError.requestError(e, deviceId, data));
+                pluginResponse.success(JSONBuilder.toJSONObject(deviceId, applyPerformanceProfile(peripheral, deviceId, profile)));
+            } catch (BLEComError e) {
+                fail(pluginResponse, deviceId, SET_PERFORMANCE_PROFILE, e);
             }
         });
     }
 
-    private void executeAsync(Runnable runnable) {
-        cordova.getThreadPool().execute(runnable);
-        //runnable.run();
+    /**
+     * Runs on the device queue, between two requests. The queue is held until the MTU exchange
+     * is done or has timed out, so that the next request does not run during the exchange.
+     */
+    private PerformanceProfile.Result applyPerformanceProfile(BLEProtocol peripheral, String deviceId, PerformanceProfile profile) throws BLEComError {
+        BluetoothGatt gatt = peripheral.isConnected() ? getGatt(peripheral) : null;
+        if (gatt == null) {
+            throw BLEComError.gattNotAvailable(deviceId);
+        }
+        PerformanceProfile.Result result = profile.apply(gatt, () -> getNegotiatedMtu(peripheral));
+        if (knownDevices != null) {
+            knownDevices.recordProfile(deviceId, result.profile.id, result.requestedMtu);
+            runOnTimer(this::saveKnownDevices);
+        }
+        if (result.warning != null) {
+            Log.w(TAG, SET_PERFORMANCE_PROFILE + " " + deviceId + " " + result.profile.id + ": " + result.warning);
+        }
+        Log.d(TAG, SET_PERFORMANCE_PROFILE + " " + deviceId + " " + result.profile.id
+                + " mtu " + result.negotiatedMtu + " (requested " + result.requestedMtu + ")");
+        return result;
+    }
+
+    /**
+     * Replies to a request that timed out or has been cancelled
+     */
+    private void onRequestAborted(PendingRequests.Request request, BLEComError error) {
+        if (CONNECT.equals(request.operation)) {
+            DeviceRegistry.Device<BLEProtocol> device = peripherals.getDevice(request.deviceId);
+            if (device != null) {
+                device.transition(DeviceRegistry.State.CONNECTING, DeviceRegistry.State.DISCONNECTED);
+            }
+            connectionStates.unsubscribe(request.deviceId, request.pluginResponse);
+        }
+        fail(request.pluginResponse, request.deviceId, request.operation, error);
+    }
+
+    /**
+     * Per request logs are only formatted when enabled, with adb shell setprop log.tag.BLECom DEBUG
+     */
+    private static boolean isDebugLoggable() {
+        return Log.isLoggable(TAG, Log.DEBUG);
+    }
+
+    private void runOnTimer(Runnable task) {
+        scheduleOnTimer(task, 0);
+    }
+
+    /**
+     * Scanner and library callbacks may still arrive once the plugin is destroyed and its timer
+     * shut down: the task is then dropped
+     *
+     * @return the scheduled task, or null if the timer is shut down
+     */
+    private ScheduledFuture<?> scheduleOnTimer(Runnable task, long delayMs) {
+        try {
+            return timer.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "Plugin destroyed, timer task dropped");
+            return null;
+        }
+    }
+
+    private Cancellable executeAsync(String deviceId, Runnable runnable) throws BLEComError {
+        connectionScheduler.touch(deviceId);
+        return getExecutor(deviceId).submit(runnable);
+    }
+
+    /**
+     * Queues a request on the device queue. While the link of the device reconnects, the request is
+     * parked instead: it is replayed once the link is back, or failed with errorHandler if it does not come back.
+     */
+    private Cancellable executeRequest(String deviceId, Runnable runnable, AutoReconnect.ErrorHandler errorHandler) throws BLEComError {
+        AutoReconnect reconnect = autoReconnects.get(deviceId);
+        if (reconnect != null) {
+            Cancellable parked = reconnect.park(runnable, errorHandler);
+            if (parked != null) {
+                connectionScheduler.touch(deviceId);
+                return parked;
+            }
+        }
+        return executeAsync(deviceId, runnable);
+    }
+
+    /**
+     * Same as executeAsync but never waits for room in the device queue, for work queued from the plugin timer
+     */
+    private Cancellable tryExecuteAsync(String deviceId, Runnable runnable) throws BLEComError {
+        connectionScheduler.touch(deviceId);
+        return getExecutor(deviceId).trySubmit(runnable);
+    }
+
+    private DeviceExecutor getExecutor(String deviceId) {
+        DeviceExecutor executor = executors.get(deviceId);
+        if (executor == null) {
+            final PluginMetrics.DeviceMetrics deviceMetrics = metrics.device(deviceId);
+            DeviceExecutor newExecutor = new DeviceExecutor(
+                    deviceId,
+                    requestQueueCapacity,
+                    requestQueueOverflowPolicy,
+                    new DeviceExecutor.TaskListener() {
+                        @Override
+                        public void beforeExecute(long waitNanos) {
+                            deviceMetrics.queueWait.record(waitNanos);
+                        }
+
+                        @Override
+                        public void afterExecute() {
+                            connectionScheduler.touch(deviceId);
+                        }
+                    }
+            );
+            executor = executors.putIfAbsent(deviceId, newExecutor);
+            if (executor == null) {
+                executor = newExecutor;
+            }
+        }
+        return executor;
+    }
+
+    private void getQueueStats(PluginResponse pluginResponse, String deviceId) throws BLEComError {
+        if (deviceId != null) {
+            DeviceExecutor executor = executors.get(deviceId);
+            if (executor == null) {
+                throw BLEComError.illegalArgument("No request queue for device " + deviceId);
+            }
+            pluginResponse.success(JSONBuilder.toJSONObject(executor, peripherals.getState(deviceId)));
+            return;
+        }
+        JSONArray stats = new JSONArray();
+        for (DeviceExecutor executor : executors.values()) {
+            stats.put(JSONBuilder.toJSONObject(executor, peripherals.getState(executor.getDeviceId())));
+        }
+        pluginResponse.success(stats);
     }
 
     private byte[] hexStringToByteArray(String hexString) throws BLEComError {
         try{
-            return Helper.HexStringToByteArray(hexString);
+            return HexCodec.decode(hexString);
         }
         catch (Throwable ex){
             throw BLEComError.illegalArgument("Should be a valid hexadecimal string");
         }
     }
 
-    private void connect(PluginResponse pluginResponse, String macAddress) throws BLEComError {
-        BLEProtocol peripheral = peripherals.getIfExists(macAddress);
-        if (peripheral == null){
-            if (!BluetoothAdapter.checkBluetoothAddress(macAddress)) {
-                throw BLEComError.invalidMacAddress(macAddress);
+    private void connect(PluginResponse pluginResponse, String macAddress, JSONObject options) throws BLEComError {
+        PerformanceProfile requestedProfile = PerformanceProfile.fromJSON(options);
+        PerformanceProfile profile = requestedProfile != null ? requestedProfile : getKnownProfile(macAddress);
+        if (options.has("autoReconnect")) {
+            AutoReconnect.Options reconnectOptions = AutoReconnect.Options.fromJSON(options.opt("autoReconnect"));
+            stopAutoReconnect(macAddress);
+            if (reconnectOptions != null) {
+                autoReconnects.put(macAddress, new AutoReconnect(reconnectOptions, macAddress, requestQueueCapacity));
             }
-            BluetoothDevice device = bluetoothAdapter.getRemoteDevice(macAddress);
-            peripheral = new BLEProtocol(cordova.getActivity(), device);
-            peripherals.put(macAddress, peripheral);
         }
-        BLEProtocol finalPeripheral = peripheral;
+        DeviceRegistry.Device<BLEProtocol> device = peripherals.getOrCreate(macAddress, this::createPeripheral);
+        BLEProtocol finalPeripheral = device.link;
+        responseCache.invalidate(macAddress);
         setConnectionStateCallback(pluginResponse, macAddress);
         if (finalPeripheral.isConnected()){
+            device.moveTo(DeviceRegistry.State.CONNECTED);
+            connectionScheduler.touch(macAddress);
             pluginResponse.newResult("CONNECTED");
             return;
         }
-        executeAsync(() -> {
+        PendingRequests.Request request;
+        try {
+            request = pendingRequests.start(macAddress, CONNECT, options, pluginResponse);
+        } catch (BLEComError e) {
+            connectionStates.unsubscribe(macAddress, pluginResponse);
+            throw e;
+        }
+        device.moveTo(DeviceRegistry.State.CONNECTING);
+        long connectStart = System.nanoTime();
+        Cancellable work;
+        try {
+            work = connectionScheduler.connect(
+                    macAddress,
+                    finalPeripheral,
+                    ConnectionScheduler.Priority.parse(options.optString("priority")),
+                    new ConnectionScheduler.Callback() {
+                        @Override
+                        public void onConnected() {
+                            long connectNanos = System.nanoTime() - connectStart;
+                            metrics.device(macAddress).connect.record(connectNanos);
+                            recorder.request(macAddress, CONNECT, connectNanos, 0);
+                            // Before the profile, a layout change would forget the profile applied by this connect
+                            rememberDevice(macAddress, finalPeripheral);
+                            if (profile != null) {
+                                try {
+                                    applyPerformanceProfile(finalPeripheral, macAddress, profile);
+                                } catch (BLEComError e) {
+                                    Log.w(TAG, "Cannot apply performance profile to " + macAddress, e);
+                                }
+                            }
+                            device.transition(DeviceRegistry.State.CONNECTING, DeviceRegistry.State.CONNECTED);
+                            if (pendingRequests.complete(request)) {
+                                pluginResponse.newResult("CONNECTED");
+                            }
+                        }
+
+                        @Override
+                        public void onError(Exception e) {
+                            device.transition(DeviceRegistry.State.CONNECTING, DeviceRegistry.State.DISCONNECTED);
+                            if (!pendingRequests.complete(request)) {
+                                return;
+                            }
+                            connectionStates.unsubscribe(macAddress, pluginResponse);
+                            fail(pluginResponse, macAddress, CONNECT, e instanceof BLEComError ? (BLEComError) e : BLEComError.connectionError(e));
+                        }
+                    }
+            );
+        } catch (RuntimeException e) {
+            device.transition(DeviceRegistry.State.CONNECTING, DeviceRegistry.State.DISCONNECTED);
+            if (!pendingRequests.discard(request)) {
+                return;
+            }
+            throw e;
+        }
+        pendingRequests.attach(request, work);
+    }
+
+    private void loadKnownDevices() {
+        try {
+            knownDevices.load();
+        } catch (IOException e) {
+            Log.w(TAG, "Known devices cache discarded", e);
+        }
+    }
+
+    private void saveKnownDevices() {
+        try {
+            knownDevices.save();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot save known devices cache", e);
+        }
+    }
+
+    /**
+     * Records a device after a connect, with its GATT layout.
+     * If the layout changed since the last connect, the performance profile recorded for the device is forgotten.
+     */
+    @SuppressLint("MissingPermission")
+    private void rememberDevice(String deviceId, BLEProtocol peripheral) {
+        if (knownDevices == null) {
+            return;
+        }
+        knownDevices.recordConnected(deviceId, bluetoothAdapter.getRemoteDevice(deviceId).getName(), System.currentTimeMillis());
+        BluetoothGatt gatt = getGatt(peripheral);
+        if (gatt != null && gatt.getServices() != null) {
+            List<KnownDeviceCache.Service> layout = new ArrayList<>();
+            for (BluetoothGattService service : gatt.getServices()) {
+                List<KnownDeviceCache.Characteristic> characteristics = new ArrayList<>();
+                for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                    characteristics.add(new KnownDeviceCache.Characteristic(characteristic.getUuid(), characteristic.getProperties()));
+                }
+                layout.add(new KnownDeviceCache.Service(service.getUuid(), characteristics));
+            }
+            if (!knownDevices.updateLayout(deviceId, layout)) {
+                Log.i(TAG, "GATT layout of " + deviceId + " changed, known device entry invalidated");
+            }
+        }
+        runOnTimer(this::saveKnownDevices);
+    }
+
+    /**
+     * @return the performance profile last requested for a known device, or null
+     */
+    private PerformanceProfile getKnownProfile(String deviceId) {
+        KnownDeviceCache.KnownDevice device = knownDevices == null ? null : knownDevices.get(deviceId);
+        if (device == null || device.profile.isEmpty()) {
+            return null;
+        }
+        try {
+            return PerformanceProfile.of(PerformanceProfile.Name.parse(device.profile), device.mtu);
+        } catch (BLEComError e) {
+            Log.w(TAG, "Ignoring known profile of " + deviceId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Called on the thread of the IoTize library for each state change reported to the app.
+     * While an event channel takes the state events, they are not also sent to the connect callbacks,
+     * so that each state change crosses the bridge once.
+     *
+     * @return true if the state has been delivered by the event channel
+     */
+    private boolean onStatePublished(String deviceId, String state) {
+        DeviceRegistry.State registryState = DeviceRegistry.State.fromConnectionState(state);
+        if (registryState != null) {
+            peripherals.moveTo(deviceId, registryState);
+        }
+        recorder.state(deviceId, state);
+        if ("DISCONNECTED".equals(state)) {
+            // After a drop, or when auto reconnect gave up. An explicit disconnect has already ended the stream.
+            failStream(deviceId, BLEComError.connectionError(new Exception("Link to " + deviceId + " lost")));
+        }
+        EventChannel channel = events;
+        if (channel == null || !channel.accepts(EventChannel.Type.STATE)) {
+            return false;
+        }
+        channel.state(deviceId, state);
+        return true;
+    }
+
+    /**
+     * Hides the drop of a link with auto reconnect from the connect callbacks, and reconnects it.
+     * Called on the thread of the IoTize library.
+     */
+    private boolean onConnectionStateChange(String deviceId, String state) {
+        AutoReconnect reconnect = autoReconnects.get(deviceId);
+        if (reconnect == null) {
+            return false;
+        }
+        if (reconnect.isReconnecting()) {
+            return true;
+        }
+        if (!"DISCONNECTED".equals(state) || !reconnect.start()) {
+            return false;
+        }
+        Log.i(TAG, "Link to " + deviceId + " dropped, reconnecting");
+        peripherals.moveTo(deviceId, DeviceRegistry.State.CONNECTING);
+        pauseStream(deviceId, true);
+        responseCache.invalidate(deviceId);
+        scheduleReconnect(deviceId, reconnect, 0);
+        return true;
+    }
+
+    /**
+     * Waits for the backoff delay on the timer, then queues the attempt on the device queue.
+     * Not queued from the library thread, which may be needed by the running request to fail.
+     * The timer does not wait for room in the queue: while it is full, the attempt waits for another delay.
+     */
+    private void scheduleReconnect(String deviceId, AutoReconnect reconnect, int attempt) {
+        reconnect.setNextAttempt(scheduleOnTimer(() -> {
+            if (autoReconnects.get(deviceId) != reconnect) {
+                return;
+            }
+            try {
+                reconnect.setWork(tryExecuteAsync(deviceId, () -> reconnect(deviceId, reconnect, attempt)));
+            } catch (BLEComError e) {
+                if (!getExecutor(deviceId).isShutdown()) {
+                    scheduleReconnect(deviceId, reconnect, attempt);
+                    return;
+                }
+                giveUpReconnect(deviceId, reconnect, reconnect.finish(), e);
+            }
+        }, reconnect.getDelayMs(attempt)));
+    }
+
+    /**
+     * Runs one attempt on the device queue, so that no request is sent while the link connects.
+     * The protocol and the BluetoothDevice of the device are reused.
+     */
+    private void reconnect(String deviceId, AutoReconnect reconnect, int attempt) {
+        BLEProtocol peripheral = peripherals.getIfExists(deviceId);
+        if (autoReconnects.get(deviceId) != reconnect) {
+            // Stopped by disconnect
+            return;
+        }
+        if (peripheral != null) {
+            long start = System.nanoTime();
             try {
-                finalPeripheral.connect();
-                pluginResponse.newResult("CONNECTED");
-            } catch(Exception e) {
-                pluginResponse.error(BLEComError.connectionError(e));
+                peripheral.connect();
+            } catch (Exception e) {
+                reconnect.setLastError(e);
+                Log.w(TAG, "Reconnect attempt " + (attempt + 1) + " to " + deviceId + " failed", e);
             }
-        });
+            if (peripheral.isConnected()) {
+                PluginMetrics.DeviceMetrics deviceMetrics = metrics.device(deviceId);
+                long connectNanos = System.nanoTime() - start;
+                deviceMetrics.connect.record(connectNanos);
+                deviceMetrics.reconnects.incrementAndGet();
+                recorder.request(deviceId, "reconnect", connectNanos, 0);
+                List<AutoReconnect.ParkedRequest> parked = reconnect.finish();
+                Log.i(TAG, "Reconnected to " + deviceId + " after " + (attempt + 1) + " attempts");
+                rememberDevice(deviceId, peripheral);
+                connectionStates.publish(deviceId, "CONNECTED");
+                pauseStream(deviceId, false);
+                DeviceExecutor executor = getExecutor(deviceId);
+                for (AutoReconnect.ParkedRequest request : parked) {
+                    request.replay(executor);
+                }
+                return;
+            }
+            if (attempt + 1 < reconnect.getMaxAttempts()) {
+                scheduleReconnect(deviceId, reconnect, attempt + 1);
+                return;
+            }
+        }
+        Exception lastError = reconnect.getLastError();
+        giveUpReconnect(deviceId, reconnect, reconnect.finish(), lastError == null
+                ? BLEComError.connectionError(new Exception("Device " + deviceId + " did not reconnect"))
+                : BLEComError.connectionError(lastError));
+    }
+
+    private void giveUpReconnect(String deviceId, AutoReconnect reconnect, List<AutoReconnect.ParkedRequest> parked, BLEComError error) {
+        autoReconnects.remove(deviceId, reconnect);
+        recordFailure(deviceId, "reconnect", error);
+        connectionStates.publish(deviceId, "DISCONNECTED");
+        for (AutoReconnect.ParkedRequest request : parked) {
+            request.fail(error);
+        }
+    }
+
+    private void stopAutoReconnect(String deviceId) {
+        AutoReconnect reconnect = autoReconnects.remove(deviceId);
+        if (reconnect != null) {
+            for (AutoReconnect.ParkedRequest request : reconnect.cancel()) {
+                request.fail(BLEComError.cancelled(deviceId));
+            }
+            pauseStream(deviceId, false);
+        }
+    }
+
+    /**
+     * The only access to the GATT of a link. The IoTize library does not expose it, so the default
+     * implementation depends on the library internals, see {@link GattAccess}.
+     * Can be overridden once the library gives access to the GATT.
+     *
+     * @return the GATT, or null if it is not available
+     */
+    protected BluetoothGatt getGatt(BLEProtocol peripheral) {
+        return GattAccess.find(peripheral);
+    }
+
+    /**
+     * The MTU negotiated for a link, kept by the IoTize library which receives the MTU exchange callback.
+     * Read through the library internals like {@link #getGatt}.
+     *
+     * @return the MTU, or -1 if it cannot be read
+     */
+    protected int getNegotiatedMtu(BLEProtocol peripheral) {
+        return GattAccess.findMtu(peripheral);
+    }
+
+    /**
+     * Creates the protocol of a device. Can be overridden to run the plugin against simulated peripherals.
+     */
+    protected BLEProtocol createPeripheral(BluetoothDevice device) {
+        return new BLEProtocol(cordova.getActivity(), device);
+    }
+
+    private BLEProtocol createPeripheral(String macAddress) throws BLEComError {
+        if (!BluetoothAdapter.checkBluetoothAddress(macAddress)) {
+            throw BLEComError.invalidMacAddress(macAddress);
+        }
+        return createPeripheral(bluetoothAdapter.getRemoteDevice(macAddress));
     }
 
     /* @Override */
@@ -366,10 +1736,6 @@ public class BLECom extends CordovaPlugin {
             pluginResponse.error(BLEComError.illegalAction( "unregistered peripheral"));
             return;
         }
-        peripheral.addOnConnectionStatusChangeListener(
-                (newConnectionState, oldConnectionState) -> {
-                    LOG.d(TAG, "Old State: " + oldConnectionState + ", New State: " + newConnectionState);
-                    pluginResponse.newResult(newConnectionState.toString());
-                });
+        connectionStates.subscribe(macAddress, peripheral, pluginResponse);
     }
 }
\ No newline at end of file
@@ -6,8 +6,15 @@
 //
 package com.iotize.plugin;
 
+import java.util.Arrays;
+
 public class BLEComError extends Exception {
 
+    /**
+     * Bytes of a failed request kept in the error message
+     */
+    private static final int MAX_REQUEST_LOGGED = 32;
+
     private final String code;
 
     public BLEComError(String code) {
@@ -38,7 +45,12 @@ public class BLEComError extends Exception {
     }
 
     public static BLEComError requestError(Exception e, String deviceId, byte[] data) {
-        return new BLEComError(Code.REQUEST_ERROR, e);
+        String request = data == null ? "" : HexCodec.encode(Arrays.copyOf(data, Math.min(data.length, MAX_REQUEST_LOGGED)))
+                + (data.length > MAX_REQUEST_LOGGED ? "..." : "");
+        return new BLEComError(
+                Code.REQUEST_ERROR,
+                e.getMessage() + " (device " + deviceId + ", request " + request + ")"
+        );
     }
 
     public static BLEComError unknownError(Throwable err) {
@@ -63,6 +75,32 @@ public class BLEComError extends Exception {
         );
     }
 
+    public static BLEComError queueFull(String deviceId, int capacity) {
+        return new BLEComError(
+                BLEComError.Code.QUEUE_FULL,
+                "Request queue of device " + deviceId + " is full (" + capacity + " pending requests)"
+        );
+    }
+
+    public static BLEComError timeout(String operation, String deviceId, long timeoutMs) {
+        return new BLEComError(
+                BLEComError.Code.TIMEOUT,
+                operation + " on device " + deviceId + " timed out after " + timeoutMs + "ms"
+        );
+    }
+
+    public static BLEComError gattNotAvailable(String deviceId) {
+        return new BLEComError(BLEComError.Code.GATT_NOT_AVAILABLE, "GATT of device " + deviceId + " is not available");
+    }
+
+    public static BLEComError unknownDevice(String deviceId) {
+        return new BLEComError(BLEComError.Code.UNKNOWN_DEVICE, "Device " + deviceId + " is not registered, connect it first");
+    }
+
+    public static BLEComError cancelled(String requestId) {
+        return new BLEComError(BLEComError.Code.CANCELLED, "Request " + requestId + " cancelled");
+    }
+
     public String getCode() {
         return code;
     }
@@ -78,5 +116,10 @@ public class BLEComError extends Exception {
         String LOCATION_SERVICE_DISABLED = "LocationServiceDisabled";
         String DISCONNECTION_ERROR = "DisconnectError";
         String ILLEGAL_ACTION = "IllegalAction";
+        String QUEUE_FULL = "QueueFull";
+        String TIMEOUT = "Timeout";
+        String CANCELLED = "Cancelled";
+        String GATT_NOT_AVAILABLE = "GattNotAvailable";
+        String UNKNOWN_DEVICE = "UnknownDevice";
     }
 }
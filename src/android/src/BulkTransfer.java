@@ -0,0 +1,246 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  BulkTransfer.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Sends a large sequence of frames to a device without one bridge call per frame.
+ * The frames are given in one buffer, each one prefixed by its length on 2 bytes (big endian).
+ * They are sent by windows on the device queue, so that other requests can run between two windows.
+ * The transfer stops at the first error and can be resumed from the frame that failed,
+ * until its resume delay expires and its buffer is released.
+ */
+class BulkTransfer {
+
+    public interface Sender {
+        byte[] send(byte[] frame) throws Exception;
+    }
+
+    public static class Options {
+        /**
+         * Frames sent in one slice of the device queue, before the other requests of the device can run.
+         * Frames are still sent one at a time, each waiting for its response.
+         */
+        int framesPerSlice = 16;
+        long progressIntervalMs = 250;
+        boolean collectResponses;
+        int offset;
+        long resumeTtlMs = 120000;
+
+        public static Options fromJSON(JSONObject json) {
+            Options options = new Options();
+            options.framesPerSlice = Math.max(json.optInt("framesPerSlice", options.framesPerSlice), 1);
+            options.progressIntervalMs = Math.max(json.optLong("progressIntervalMs", options.progressIntervalMs), 0);
+            options.collectResponses = json.optBoolean("collectResponses", false);
+            options.offset = Math.max(json.optInt("offset", 0), 0);
+            options.resumeTtlMs = Math.max(json.optLong("resumeTtlMs", options.resumeTtlMs), 0);
+            return options;
+        }
+    }
+
+    private final String id;
+    private final String deviceId;
+    private final byte[] data;
+    private final Options options;
+    /**
+     * Start of each frame in data, after its length
+     */
+    private final int[] frameStarts;
+    private final int[] frameLengths;
+    private final int totalBytes;
+    /**
+     * Bytes of the frames skipped by the offset option
+     */
+    private final long skippedBytes;
+
+    private volatile PluginResponse pluginResponse;
+    private volatile boolean cancelled;
+    private volatile boolean running;
+    private ScheduledFuture<?> expiry;
+    private int nextFrame;
+    private long bytesSent;
+    private long activeNanos;
+    private long lastProgressAt;
+    /**
+     * Length prefixed responses, grown by doubling
+     */
+    private byte[] responses = new byte[0];
+    private int responsesLength;
+
+    private BulkTransfer(String id, String deviceId, byte[] data, Options options, int[] frameStarts, int[] frameLengths, int totalBytes) {
+        this.id = id;
+        this.deviceId = deviceId;
+        this.data = data;
+        this.options = options;
+        this.frameStarts = frameStarts;
+        this.frameLengths = frameLengths;
+        this.totalBytes = totalBytes;
+        this.nextFrame = Math.min(options.offset, frameStarts.length);
+        long skipped = 0;
+        for (int i = 0; i < nextFrame; i++) {
+            skipped += frameLengths[i];
+        }
+        this.skippedBytes = skipped;
+        this.bytesSent = skipped;
+    }
+
+    public static BulkTransfer create(String id, String deviceId, byte[] data, Options options) throws BLEComError {
+        int count = 0;
+        int position = 0;
+        while (position < data.length) {
+            if (position + 2 > data.length) {
+                throw BLEComError.illegalArgument("Truncated frame length at byte " + position);
+            }
+            int length = ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+            position += 2 + length;
+            if (length == 0 || position > data.length) {
+                throw BLEComError.illegalArgument("Invalid frame length at frame " + count);
+            }
+            count++;
+        }
+
+        int[] frameStarts = new int[count];
+        int[] frameLengths = new int[count];
+        position = 0;
+        for (int i = 0; i < count; i++) {
+            frameLengths[i] = ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+            frameStarts[i] = position + 2;
+            position += 2 + frameLengths[i];
+        }
+        return new BulkTransfer(id, deviceId, data, options, frameStarts, frameLengths, data.length - 2 * count);
+    }
+
+    /**
+     * Sends the frames of the next queue slice. If a frame fails, the transfer stops before it.
+     *
+     * @return true if frames remain to be sent
+     */
+    public boolean sendSlice(Sender sender) throws Exception {
+        long start = System.nanoTime();
+        try {
+            int end = Math.min(nextFrame + options.framesPerSlice, frameStarts.length);
+            while (nextFrame < end && !cancelled) {
+                int frameStart = frameStarts[nextFrame];
+                byte[] response = sender.send(Arrays.copyOfRange(data, frameStart, frameStart + frameLengths[nextFrame]));
+                if (options.collectResponses) {
+                    appendResponse(response);
+                }
+                bytesSent += frameLengths[nextFrame];
+                nextFrame++;
+            }
+        } finally {
+            activeNanos += System.nanoTime() - start;
+        }
+        return !cancelled && nextFrame < frameStarts.length;
+    }
+
+    /**
+     * @return true if progress should be reported now
+     */
+    public boolean isProgressDue(long now) {
+        if (now - lastProgressAt < options.progressIntervalMs) {
+            return false;
+        }
+        lastProgressAt = now;
+        return true;
+    }
+
+    private void appendResponse(byte[] response) {
+        int length = response == null ? 0 : response.length;
+        if (responsesLength + 2 + length > responses.length) {
+            responses = Arrays.copyOf(responses, Math.max(responses.length * 2, responsesLength + 2 + length));
+        }
+        responses[responsesLength++] = (byte) (length >> 8);
+        responses[responsesLength++] = (byte) length;
+        if (length > 0) {
+            System.arraycopy(response, 0, responses, responsesLength, length);
+            responsesLength += length;
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public PluginResponse getPluginResponse() {
+        return pluginResponse;
+    }
+
+    public void setPluginResponse(PluginResponse pluginResponse) {
+        this.pluginResponse = pluginResponse;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        setExpiry(null);
+    }
+
+    public long getResumeTtlMs() {
+        return options.resumeTtlMs;
+    }
+
+    /**
+     * Replaces the task releasing the transfer once it can no longer be resumed, null to keep it
+     */
+    public synchronized void setExpiry(ScheduledFuture<?> expiry) {
+        if (this.expiry != null) {
+            this.expiry.cancel(false);
+        }
+        this.expiry = expiry;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+
+    public int getSentFrames() {
+        return nextFrame;
+    }
+
+    public int getTotalFrames() {
+        return frameStarts.length;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public int getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the throughput while the transfer was running on the device queue
+     */
+    public double getKBps() {
+        return activeNanos == 0 ? 0 : (bytesSent - skippedBytes) / 1024.0 / (activeNanos / 1e9);
+    }
+
+    public boolean isCollectingResponses() {
+        return options.collectResponses;
+    }
+
+    public byte[] getResponses() {
+        return Arrays.copyOf(responses, responsesLength);
+    }
+}
@@ -0,0 +1,17 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  Cancellable.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+/**
+ * Handle on queued or running work
+ */
+interface Cancellable {
+    /**
+     * @return true if the work has been cancelled before completing
+     */
+    boolean cancel();
+}
@@ -0,0 +1,381 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  ConnectionScheduler.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Schedules connections so that only a few GATT connects run at the same time
+ * and the number of live links stays bounded.
+ * Foreground connects go before background ones, and the least recently used
+ * link is disconnected when room is needed or when it has been idle for too long.
+ *
+ * @param <T> link type, BLEProtocol in the plugin
+ */
+class ConnectionScheduler<T> {
+
+    private static final String TAG = "ConnectionScheduler";
+
+    public enum Priority {
+        FOREGROUND,
+        BACKGROUND;
+
+        public static Priority parse(String value) {
+            return "background".equalsIgnoreCase(value) ? BACKGROUND : FOREGROUND;
+        }
+    }
+
+    public interface Connector<T> {
+        void connect(T link) throws Exception;
+
+        void disconnect(T link) throws Exception;
+
+        boolean isConnected(T link);
+    }
+
+    /**
+     * Runs a connect or disconnect job for a device, on the device queue in the plugin.
+     * Must not wait for room in the queue: jobs are dispatched from the plugin timer and from device workers.
+     */
+    public interface Dispatcher {
+        Cancellable dispatch(String deviceId, Runnable job) throws BLEComError;
+    }
+
+    /**
+     * Exactly one of the methods is called for each connect, onError with a Cancelled error if it is cancelled
+     */
+    public interface Callback {
+        void onConnected();
+
+        void onError(Exception e);
+    }
+
+    public static class Config {
+        int maxConcurrentConnects = 2;
+        int maxLiveLinks = 7;
+        /**
+         * 0 disables idle eviction
+         */
+        long idleTimeoutMs = 0;
+    }
+
+    private static class LinkEntry<T> {
+        final String deviceId;
+        final T link;
+        long lastUsed;
+        /**
+         * Connects in progress, several connect calls for the same device may run one after the other
+         */
+        int connects;
+
+        LinkEntry(String deviceId, T link, long now) {
+            this.deviceId = deviceId;
+            this.link = link;
+            this.lastUsed = now;
+        }
+    }
+
+    private static class PendingConnect<T> implements Comparable<PendingConnect<T>> {
+        final LinkEntry<T> entry;
+        final Priority priority;
+        final long sequence;
+        final Callback callback;
+        final AtomicBoolean finished = new AtomicBoolean();
+        final AtomicBoolean notified = new AtomicBoolean();
+        volatile Cancellable work;
+        volatile boolean started;
+        volatile boolean cancelled;
+
+        PendingConnect(LinkEntry<T> entry, Priority priority, long sequence, Callback callback) {
+            this.entry = entry;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.callback = callback;
+        }
+
+        void notifyConnected() {
+            if (notified.compareAndSet(false, true)) {
+                callback.onConnected();
+            }
+        }
+
+        boolean notifyError(Exception e) {
+            if (!notified.compareAndSet(false, true)) {
+                return false;
+            }
+            callback.onError(e);
+            return true;
+        }
+
+        @Override
+        public int compareTo(PendingConnect<T> other) {
+            int result = priority.compareTo(other.priority);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final Config config;
+    private final Connector<T> connector;
+    private final Dispatcher dispatcher;
+    private final Map<String, LinkEntry<T>> links = new HashMap<>();
+    private final PriorityQueue<PendingConnect<T>> pending = new PriorityQueue<>();
+    private long sequence;
+    private int inProgress;
+    private ScheduledFuture<?> idleTask;
+
+    /**
+     * @param timer plugin timer, which runs the idle eviction
+     */
+    public ConnectionScheduler(Config config, Connector<T> connector, Dispatcher dispatcher, ScheduledExecutorService timer) {
+        this.config = config;
+        this.connector = connector;
+        this.dispatcher = dispatcher;
+        if (config.idleTimeoutMs > 0) {
+            long period = Math.max(config.idleTimeoutMs / 2, 1000);
+            idleTask = timer.scheduleAtFixedRate(this::evictIdleLinks, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queue a connect. The callback is called once the connect has run or has been cancelled.
+     */
+    public Cancellable connect(String deviceId, T link, Priority priority, Callback callback) {
+        List<Job> jobs;
+        PendingConnect<T> request;
+        synchronized (this) {
+            LinkEntry<T> entry = links.get(deviceId);
+            if (entry == null || entry.link != link) {
+                entry = new LinkEntry<>(deviceId, link, now());
+                links.put(deviceId, entry);
+            }
+            entry.lastUsed = now();
+            request = new PendingConnect<>(entry, priority, sequence++, callback);
+            pending.add(request);
+            jobs = pump();
+        }
+        dispatch(jobs);
+        return () -> cancel(request);
+    }
+
+    private boolean cancel(PendingConnect<T> request) {
+        boolean removed;
+        synchronized (this) {
+            removed = pending.remove(request);
+        }
+        if (removed) {
+            request.notifyError(BLEComError.cancelled(request.entry.deviceId));
+            return true;
+        }
+        // Set before reading started: either the job sees it and skips the connect, or the connect is interrupted
+        request.cancelled = true;
+        if (!request.notifyError(BLEComError.cancelled(request.entry.deviceId))) {
+            return false;
+        }
+        // The slot is only released by the job itself once the connect has returned,
+        // an interrupted connect may still be running
+        Cancellable work = request.work;
+        if (request.started && work != null) {
+            work.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * Mark a link as used, so that it is not considered idle
+     */
+    public synchronized void touch(String deviceId) {
+        LinkEntry<T> entry = links.get(deviceId);
+        if (entry != null) {
+            entry.lastUsed = now();
+        }
+    }
+
+    /**
+     * Forget a link, after an explicit disconnect
+     */
+    public void remove(String deviceId) {
+        List<Job> jobs;
+        synchronized (this) {
+            links.remove(deviceId);
+            jobs = pump();
+        }
+        dispatch(jobs);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized int getInProgressCount() {
+        return inProgress;
+    }
+
+    public synchronized void shutdown() {
+        if (idleTask != null) {
+            idleTask.cancel(false);
+            idleTask = null;
+        }
+        pending.clear();
+        links.clear();
+    }
+
+    /**
+     * Jobs are dispatched outside of the lock, as dispatching runs plugin code
+     */
+    private interface Job {
+        void dispatch();
+    }
+
+    private void dispatch(List<Job> jobs) {
+        for (Job job : jobs) {
+            job.dispatch();
+        }
+    }
+
+    /**
+     * Must be called with the lock held
+     *
+     * @return the connect and disconnect jobs to dispatch
+     */
+    private List<Job> pump() {
+        List<Job> jobs = new ArrayList<>();
+        while (inProgress < config.maxConcurrentConnects && !pending.isEmpty()) {
+            PendingConnect<T> next = pending.peek();
+            // A device already connecting holds its slot, it must not evict another link
+            if (next.entry.connects == 0 && !connector.isConnected(next.entry.link) && countLiveLinks() >= config.maxLiveLinks) {
+                LinkEntry<T> evicted = findLeastRecentlyUsed(next.entry);
+                if (evicted == null) {
+                    // Wait for a link to be released
+                    break;
+                }
+                Log.d(TAG, "Disconnecting least recently used device " + evicted.deviceId);
+                jobs.add(evict(evicted));
+            }
+            pending.poll();
+            inProgress++;
+            next.entry.connects++;
+            jobs.add(() -> start(next));
+        }
+        return jobs;
+    }
+
+    private void start(final PendingConnect<T> request) {
+        final LinkEntry<T> entry = request.entry;
+        try {
+            request.work = dispatcher.dispatch(entry.deviceId, () -> {
+                request.started = true;
+                try {
+                    if (request.cancelled) {
+                        return;
+                    }
+                    if (!connector.isConnected(entry.link)) {
+                        connector.connect(entry.link);
+                    }
+                    request.notifyConnected();
+                } catch (Exception e) {
+                    request.notifyError(e);
+                } finally {
+                    onConnectFinished(request);
+                }
+            });
+        } catch (BLEComError e) {
+            request.notifyError(e);
+            onConnectFinished(request);
+        }
+    }
+
+    private void onConnectFinished(PendingConnect<T> request) {
+        if (!request.finished.compareAndSet(false, true)) {
+            return;
+        }
+        LinkEntry<T> entry = request.entry;
+        List<Job> jobs;
+        synchronized (this) {
+            inProgress--;
+            entry.connects--;
+            entry.lastUsed = now();
+            jobs = pump();
+        }
+        dispatch(jobs);
+    }
+
+    private int countLiveLinks() {
+        int count = 0;
+        for (LinkEntry<T> entry : links.values()) {
+            if (entry.connects > 0 || connector.isConnected(entry.link)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private LinkEntry<T> findLeastRecentlyUsed(LinkEntry<T> keep) {
+        LinkEntry<T> oldest = null;
+        for (LinkEntry<T> entry : links.values()) {
+            if (entry == keep || entry.connects > 0 || !connector.isConnected(entry.link)) {
+                continue;
+            }
+            if (oldest == null || entry.lastUsed < oldest.lastUsed) {
+                oldest = entry;
+            }
+        }
+        return oldest;
+    }
+
+    private void evictIdleLinks() {
+        List<Job> jobs = new ArrayList<>();
+        synchronized (this) {
+            long idleSince = now() - config.idleTimeoutMs;
+            List<LinkEntry<T>> idleLinks = new ArrayList<>();
+            for (LinkEntry<T> entry : links.values()) {
+                if (entry.connects == 0 && entry.lastUsed < idleSince && connector.isConnected(entry.link)) {
+                    idleLinks.add(entry);
+                }
+            }
+            for (LinkEntry<T> entry : idleLinks) {
+                Log.d(TAG, "Disconnecting idle device " + entry.deviceId);
+                jobs.add(evict(entry));
+            }
+            jobs.addAll(pump());
+        }
+        dispatch(jobs);
+    }
+
+    /**
+     * Must be called with the lock held
+     */
+    private Job evict(final LinkEntry<T> entry) {
+        links.remove(entry.deviceId);
+        return () -> {
+            try {
+                dispatcher.dispatch(entry.deviceId, () -> {
+                    try {
+                        connector.disconnect(entry.link);
+                    } catch (Exception e) {
+                        Log.w(TAG, "Cannot disconnect device " + entry.deviceId, e);
+                    }
+                });
+            } catch (BLEComError e) {
+                Log.w(TAG, "Cannot disconnect device " + entry.deviceId, e);
+            }
+        };
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+}
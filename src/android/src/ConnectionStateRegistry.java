@@ -0,0 +1,151 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  ConnectionStateRegistry.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import com.iotize.android.communication.protocol.ble.BLEProtocol;
+
+import org.apache.cordova.LOG;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Forwards connection state changes of each device to the callbacks of its connect calls.
+ * Only one listener is added to each BLEProtocol, whatever the number of connect calls.
+ */
+class ConnectionStateRegistry {
+
+    private static final String TAG = "ConnectionStateRegistry";
+
+    public interface Interceptor {
+        /**
+         * @return true if the state change must not be forwarded to the subscribers
+         */
+        boolean intercept(String deviceId, String state);
+    }
+
+    public interface Listener {
+        /**
+         * Called for each state forwarded to the subscribers, even if the device has none
+         *
+         * @return true if the state has been delivered another way and must not be sent to the subscribers.
+         * Ignored for the last state sent by {@link #complete}, which releases the subscribers.
+         */
+        boolean onStateChange(String deviceId, String state);
+    }
+
+    private static class DeviceSubscriptions {
+        final CopyOnWriteArraySet<PluginResponse> subscribers = new CopyOnWriteArraySet<>();
+        BLEProtocol listenedPeripheral;
+    }
+
+    private final ConcurrentHashMap<String, DeviceSubscriptions> devices = new ConcurrentHashMap<>();
+    private final Interceptor interceptor;
+    private final Listener listener;
+
+    public ConnectionStateRegistry() {
+        this(null);
+    }
+
+    public ConnectionStateRegistry(Interceptor interceptor) {
+        this(interceptor, null);
+    }
+
+    public ConnectionStateRegistry(Interceptor interceptor, Listener listener) {
+        this.interceptor = interceptor;
+        this.listener = listener;
+    }
+
+    public void subscribe(String deviceId, BLEProtocol peripheral, PluginResponse subscriber) {
+        DeviceSubscriptions subscriptions = getSubscriptions(deviceId);
+        subscriptions.subscribers.add(subscriber);
+        synchronized (subscriptions) {
+            if (subscriptions.listenedPeripheral != peripheral) {
+                subscriptions.listenedPeripheral = peripheral;
+                peripheral.addOnConnectionStatusChangeListener(
+                        (newConnectionState, oldConnectionState) -> {
+                            LOG.d(TAG, "Old State: " + oldConnectionState + ", New State: " + newConnectionState);
+                            if (subscriptions.listenedPeripheral != peripheral) {
+                                return;
+                            }
+                            String state = newConnectionState.toString();
+                            if (interceptor == null || !interceptor.intercept(deviceId, state)) {
+                                publish(deviceId, subscriptions, state);
+                            }
+                        });
+            }
+        }
+    }
+
+    public void unsubscribe(String deviceId, PluginResponse subscriber) {
+        DeviceSubscriptions subscriptions = devices.get(deviceId);
+        if (subscriptions != null) {
+            subscriptions.subscribers.remove(subscriber);
+        }
+    }
+
+    /**
+     * Sends a last state to the subscribers of the device and removes them
+     */
+    public void complete(String deviceId, String state) {
+        if (listener != null) {
+            listener.onStateChange(deviceId, state);
+        }
+        DeviceSubscriptions subscriptions = devices.get(deviceId);
+        if (subscriptions == null) {
+            return;
+        }
+        for (PluginResponse subscriber : subscriptions.subscribers) {
+            subscriptions.subscribers.remove(subscriber);
+            if (!subscriber.isFinished()) {
+                subscriber.success(state);
+            }
+        }
+    }
+
+    /**
+     * Sends a state to the subscribers of the device, for state changes not reported by the peripheral
+     */
+    public void publish(String deviceId, String state) {
+        DeviceSubscriptions subscriptions = devices.get(deviceId);
+        if (subscriptions != null) {
+            publish(deviceId, subscriptions, state);
+        } else if (listener != null) {
+            listener.onStateChange(deviceId, state);
+        }
+    }
+
+    public int getSubscriberCount(String deviceId) {
+        DeviceSubscriptions subscriptions = devices.get(deviceId);
+        return subscriptions == null ? 0 : subscriptions.subscribers.size();
+    }
+
+    private void publish(String deviceId, DeviceSubscriptions subscriptions, String state) {
+        if (listener != null && listener.onStateChange(deviceId, state)) {
+            return;
+        }
+        for (PluginResponse subscriber : subscriptions.subscribers) {
+            if (subscriber.isFinished()) {
+                subscriptions.subscribers.remove(subscriber);
+            } else {
+                subscriber.newResult(state);
+            }
+        }
+    }
+
+    private DeviceSubscriptions getSubscriptions(String deviceId) {
+        DeviceSubscriptions subscriptions = devices.get(deviceId);
+        if (subscriptions == null) {
+            DeviceSubscriptions newSubscriptions = new DeviceSubscriptions();
+            subscriptions = devices.putIfAbsent(deviceId, newSubscriptions);
+            if (subscriptions == null) {
+                subscriptions = newSubscriptions;
+            }
+        }
+        return subscriptions;
+    }
+}
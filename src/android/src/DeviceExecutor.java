@@ -0,0 +1,264 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  DeviceExecutor.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the tasks of one device in FIFO order on its own worker thread,
+ * so that a slow device cannot take threads away from the others.
+ * Cancelling a running task interrupts it. The next task only starts once it
+ * has returned, so that two tasks never use the device at the same time.
+ */
+class DeviceExecutor {
+
+    private static final String TAG = "DeviceExecutor";
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    public enum OverflowPolicy {
+        REJECT,
+        BLOCK;
+
+        public static OverflowPolicy parse(String value) {
+            return "block".equalsIgnoreCase(value) ? BLOCK : REJECT;
+        }
+    }
+
+    /**
+     * Called on the worker thread around each task, so that callers do not need to wrap their tasks
+     */
+    public interface TaskListener {
+        void beforeExecute(long waitNanos);
+
+        void afterExecute();
+    }
+
+    private final String deviceId;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final TaskListener listener;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong executedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private volatile long lastWaitNanos;
+
+    public DeviceExecutor(String deviceId, int capacity, OverflowPolicy overflowPolicy) {
+        this(deviceId, capacity, overflowPolicy, null);
+    }
+
+    public DeviceExecutor(String deviceId, int capacity, OverflowPolicy overflowPolicy, TaskListener listener) {
+        this.deviceId = deviceId;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.listener = listener;
+        this.executor = createExecutor();
+    }
+
+    private ThreadPoolExecutor createExecutor() {
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                1, 1,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                // Preallocated, so that queueing a task does not allocate a node
+                new ArrayBlockingQueue<>(capacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "BLECom-" + deviceId);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
+    /**
+     * Queued task, with its state instead of a FutureTask and wrapper lambdas
+     */
+    private class Task implements Runnable, Cancellable {
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int CANCELLED = 3;
+
+        private final AtomicInteger state = new AtomicInteger(NEW);
+        private final Runnable runnable;
+        private final long enqueuedAt = System.nanoTime();
+        private volatile Thread runner;
+
+        Task(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            // Set first, so that a cancel seeing RUNNING can interrupt the runner
+            runner = Thread.currentThread();
+            if (!state.compareAndSet(NEW, RUNNING)) {
+                runner = null;
+                return;
+            }
+            long waitNanos = System.nanoTime() - enqueuedAt;
+            recordWait(waitNanos);
+            try {
+                if (listener != null) {
+                    listener.beforeExecute(waitNanos);
+                }
+                runnable.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Task of device " + deviceId + " failed", e);
+            } finally {
+                if (listener != null) {
+                    listener.afterExecute();
+                }
+                synchronized (this) {
+                    state.compareAndSet(RUNNING, DONE);
+                    runner = null;
+                }
+                // An interrupt from a cancel must not reach the next task
+                Thread.interrupted();
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            if (state.compareAndSet(NEW, CANCELLED)) {
+                executor.remove(this);
+                return true;
+            }
+            // Under the task lock, so that the runner is not interrupted once it has moved to the next task
+            synchronized (this) {
+                if (!state.compareAndSet(RUNNING, CANCELLED)) {
+                    return false;
+                }
+                Thread thread = runner;
+                if (thread != null) {
+                    thread.interrupt();
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Queue a task for this device.
+     *
+     * @throws BLEComError if the queue is full and the policy is {@link OverflowPolicy#REJECT}
+     */
+    public Cancellable submit(Runnable runnable) throws BLEComError {
+        Task task = new Task(runnable);
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (overflowPolicy != OverflowPolicy.BLOCK || executor.isShutdown()) {
+                rejectedCount.incrementAndGet();
+                throw BLEComError.queueFull(deviceId, capacity);
+            }
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                rejectedCount.incrementAndGet();
+                throw BLEComError.queueFull(deviceId, capacity);
+            }
+            if (executor.isShutdown() && executor.remove(task)) {
+                // Shut down while waiting for room
+                rejectedCount.incrementAndGet();
+                throw BLEComError.queueFull(deviceId, capacity);
+            }
+            // The worker may have timed out while the queue was full
+            executor.prestartCoreThread();
+        }
+        return task;
+    }
+
+    /**
+     * Queue a task without ever waiting for room, whatever the policy.
+     * For the plugin timer, which also runs the timeouts and the idle eviction that free the queue.
+     *
+     * @throws BLEComError if the queue is full or the executor is shut down
+     */
+    public Cancellable trySubmit(Runnable runnable) throws BLEComError {
+        Task task = new Task(runnable);
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            throw BLEComError.queueFull(deviceId, capacity);
+        }
+        return task;
+    }
+
+    private void recordWait(long waitNanos) {
+        executedCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        lastWaitNanos = waitNanos;
+        long max;
+        do {
+            max = maxWaitNanos.get();
+        } while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos));
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public boolean isBusy() {
+        return executor.getActiveCount() > 0;
+    }
+
+    public long getExecutedCount() {
+        return executedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public double getLastWaitMs() {
+        return lastWaitNanos / 1e6;
+    }
+
+    public double getMaxWaitMs() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    public double getAverageWaitMs() {
+        long count = executedCount.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count;
+    }
+}
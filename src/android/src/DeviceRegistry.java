@@ -0,0 +1,171 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  DeviceRegistry.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Links of the devices used by the plugin, with the connection state of each one.
+ * Lookups do not block, and a device keeps a single link even when several
+ * threads connect to it at the same time.
+ * States only change along the transitions of {@link State#canMoveTo(State)}, with compare and set.
+ */
+class DeviceRegistry<T> {
+
+    public interface Factory<T> {
+        /**
+         * May be called by several threads for the same device, only one link is kept
+         */
+        T create(String deviceId) throws BLEComError;
+    }
+
+    public enum State {
+        DISCONNECTED,
+        CONNECTING,
+        CONNECTED,
+        DISCONNECTING;
+
+        /**
+         * Allowed transitions, indexed by the ordinals of the current and the new state
+         */
+        private static final boolean[][] TRANSITIONS = {
+                //                 DISCONNECTED CONNECTING CONNECTED DISCONNECTING
+                /* DISCONNECTED  */ {false, true, true, false},
+                /* CONNECTING    */ {true, false, true, true},
+                /* CONNECTED     */ {true, true, false, true},
+                /* DISCONNECTING */ {true, true, false, false},
+        };
+
+        public boolean canMoveTo(State newState) {
+            return TRANSITIONS[ordinal()][newState.ordinal()];
+        }
+
+        /**
+         * @return the state matching a connection state reported by the IoTize library, or null
+         */
+        public static State fromConnectionState(String state) {
+            switch (state) {
+                case "CONNECTED":
+                    return CONNECTED;
+                case "CONNECTING":
+                    return CONNECTING;
+                case "DISCONNECTING":
+                    return DISCONNECTING;
+                case "DISCONNECTED":
+                    return DISCONNECTED;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    public static class Device<T> {
+        final String deviceId;
+        final T link;
+        private final AtomicReference<State> state = new AtomicReference<>(State.DISCONNECTED);
+
+        Device(String deviceId, T link) {
+            this.deviceId = deviceId;
+            this.link = link;
+        }
+
+        public State getState() {
+            return state.get();
+        }
+
+        /**
+         * Moves to a state from the current one, if the transition is allowed
+         *
+         * @return false if the device cannot move from its current state to the new one
+         */
+        public boolean moveTo(State newState) {
+            while (true) {
+                State current = state.get();
+                if (current == newState) {
+                    return true;
+                }
+                if (!current.canMoveTo(newState)) {
+                    return false;
+                }
+                if (state.compareAndSet(current, newState)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return false if the device was not in the expected state
+         */
+        public boolean transition(State expected, State newState) {
+            return expected.canMoveTo(newState) && state.compareAndSet(expected, newState);
+        }
+    }
+
+    private final ConcurrentHashMap<String, Device<T>> devices = new ConcurrentHashMap<>();
+
+    /**
+     * The link is created outside of any lock. When two threads create the link of the same
+     * device at the same time, the first one registered is kept and returned to both.
+     *
+     * @return the device, registered with a new link if it is unknown
+     */
+    public Device<T> getOrCreate(String deviceId, Factory<T> factory) throws BLEComError {
+        Device<T> device = devices.get(deviceId);
+        if (device != null) {
+            return device;
+        }
+        Device<T> created = new Device<>(deviceId, factory.create(deviceId));
+        device = devices.putIfAbsent(deviceId, created);
+        return device == null ? created : device;
+    }
+
+    /**
+     * @throws BLEComError if the device is unknown
+     */
+    public T get(String deviceId) throws BLEComError {
+        Device<T> device = devices.get(deviceId);
+        if (device == null) {
+            throw BLEComError.unknownDevice(deviceId);
+        }
+        return device.link;
+    }
+
+    public T getIfExists(String deviceId) {
+        Device<T> device = devices.get(deviceId);
+        return device == null ? null : device.link;
+    }
+
+    public Device<T> getDevice(String deviceId) {
+        return devices.get(deviceId);
+    }
+
+    /**
+     * @return the state of the device, DISCONNECTED if it is unknown
+     */
+    public State getState(String deviceId) {
+        Device<T> device = devices.get(deviceId);
+        return device == null ? State.DISCONNECTED : device.getState();
+    }
+
+    /**
+     * @see Device#moveTo(State)
+     */
+    public boolean moveTo(String deviceId, State state) {
+        Device<T> device = devices.get(deviceId);
+        return device != null && device.moveTo(state);
+    }
+
+    public Collection<Device<T>> getDevices() {
+        return devices.values();
+    }
+
+    public int size() {
+        return devices.size();
+    }
+}
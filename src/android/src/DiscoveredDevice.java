@@ -0,0 +1,70 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  DiscoveredDevice.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+/**
+ * Last known advertisement data of a scanned device
+ */
+class DiscoveredDevice {
+
+    private final String address;
+    private String name;
+    private double rssi;
+    private long lastSeen;
+    private int emittedRssi;
+    private String emittedName;
+    private boolean emitted;
+
+    DiscoveredDevice(String address, String name, int rssi, long now) {
+        this.address = address;
+        this.name = name;
+        this.rssi = rssi;
+        this.lastSeen = now;
+    }
+
+    /**
+     * @param smoothing weight of the new value, 1 keeps the latest value only
+     */
+    void update(String name, int rssi, double smoothing, long now) {
+        this.lastSeen = now;
+        if (name != null) {
+            this.name = name;
+        }
+        this.rssi = smoothing >= 1 ? rssi : this.rssi + smoothing * (rssi - this.rssi);
+    }
+
+    /**
+     * @return true if the device has never been sent to JS or has changed since
+     */
+    boolean hasChanged() {
+        return !emitted
+                || getRssi() != emittedRssi
+                || (name != null && !name.equals(emittedName));
+    }
+
+    void markEmitted() {
+        emitted = true;
+        emittedRssi = getRssi();
+        emittedName = name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRssi() {
+        return (int) Math.round(rssi);
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+}
@@ -0,0 +1,101 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  DiscoveredDeviceCache.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of the devices seen during a scan session.
+ * Devices not seen for the TTL expire, and the least recently seen device
+ * is evicted when the size cap is reached. Both are reported as lost.
+ */
+class DiscoveredDeviceCache {
+
+    public static final long DEFAULT_TTL_MS = 15000;
+    public static final int DEFAULT_MAX_SIZE = 500;
+
+    private final long ttlMs;
+    private final int maxSize;
+    private final List<DiscoveredDevice> evicted = new ArrayList<>();
+    /**
+     * Access ordered, the first entry is the least recently seen device
+     */
+    private final LinkedHashMap<String, DiscoveredDevice> devices;
+
+    public DiscoveredDeviceCache(long ttlMs, int maxSize) {
+        this.ttlMs = ttlMs;
+        this.maxSize = maxSize;
+        this.devices = new LinkedHashMap<String, DiscoveredDevice>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DiscoveredDevice> eldest) {
+                if (size() > DiscoveredDeviceCache.this.maxSize) {
+                    evicted.add(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized DiscoveredDevice update(String address, String name, int rssi, double rssiSmoothing, long now) {
+        DiscoveredDevice device = devices.get(address);
+        if (device == null) {
+            device = new DiscoveredDevice(address, name, rssi, now);
+            devices.put(address, device);
+        } else {
+            device.update(name, rssi, rssiSmoothing, now);
+        }
+        return device;
+    }
+
+    /**
+     * Removes the expired devices
+     *
+     * @return the devices expired or evicted since the last call
+     */
+    public synchronized List<DiscoveredDevice> drainLost(long now) {
+        List<DiscoveredDevice> lost = new ArrayList<>(evicted);
+        evicted.clear();
+        Iterator<DiscoveredDevice> iterator = devices.values().iterator();
+        while (iterator.hasNext()) {
+            DiscoveredDevice device = iterator.next();
+            if (now - device.getLastSeen() <= ttlMs) {
+                // Entries are ordered by last access, the remaining ones are more recent
+                break;
+            }
+            iterator.remove();
+            lost.add(device);
+        }
+        return lost;
+    }
+
+    /**
+     * @return the devices that have not expired, least recently seen first
+     */
+    public synchronized List<DiscoveredDevice> snapshot(long now) {
+        List<DiscoveredDevice> result = new ArrayList<>(devices.size());
+        for (DiscoveredDevice device : devices.values()) {
+            if (now - device.getLastSeen() <= ttlMs) {
+                result.add(device);
+            }
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        devices.clear();
+        evicted.clear();
+    }
+
+    public synchronized int size() {
+        return devices.size();
+    }
+}
@@ -0,0 +1,207 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  EventChannel.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single kept callback carrying the asynchronous events of the plugin: scan results,
+ * lost devices, connection state changes and errors. Each event is encoded as a
+ * positional array starting with its type and timestamp, and the events recorded
+ * within the flush interval are delivered together in one bridge message.
+ *
+ * <pre>
+ * ["scan", timestamp, address, name, rssi]
+ * ["lost", timestamp, address]
+ * ["state", timestamp, deviceId, state]
+ * ["error", timestamp, deviceId, operation, code, message]
+ * </pre>
+ */
+class EventChannel {
+
+    public enum Type {
+        SCAN("scan"),
+        LOST("lost"),
+        STATE("state"),
+        ERROR("error");
+
+        final String id;
+
+        Type(String id) {
+            this.id = id;
+        }
+
+        public static Type parse(String value) throws BLEComError {
+            for (Type type : values()) {
+                if (type.id.equals(value)) {
+                    return type;
+                }
+            }
+            throw BLEComError.illegalArgument("Unknown event type " + value);
+        }
+    }
+
+    public static class Options {
+        long flushIntervalMs = 50;
+        int batchSize = 64;
+        int bufferSize = 1024;
+        EnumSet<Type> types = EnumSet.allOf(Type.class);
+
+        public static Options fromJSON(JSONObject json) throws BLEComError {
+            Options options = new Options();
+            options.flushIntervalMs = Math.max(json.optLong("flushIntervalMs", options.flushIntervalMs), 0);
+            options.batchSize = Math.max(json.optInt("batchSize", options.batchSize), 1);
+            options.bufferSize = Math.max(json.optInt("bufferSize", options.bufferSize), options.batchSize);
+            JSONArray types = json.optJSONArray("types");
+            if (types != null) {
+                options.types = EnumSet.noneOf(Type.class);
+                for (int i = 0; i < types.length(); i++) {
+                    options.types.add(Type.parse(types.optString(i)));
+                }
+            }
+            return options;
+        }
+    }
+
+    private final Options options;
+    private final ScheduledExecutorService timer;
+    private final PluginResponse pluginResponse;
+    /**
+     * Oldest events are dropped when the WebView does not keep up
+     */
+    private final ArrayDeque<JSONArray> pending = new ArrayDeque<>();
+    private long dropped;
+    private boolean flushScheduled;
+    private volatile boolean closed;
+
+    public EventChannel(Options options, ScheduledExecutorService timer, PluginResponse pluginResponse) {
+        this.options = options;
+        this.timer = timer;
+        this.pluginResponse = pluginResponse;
+    }
+
+    public boolean accepts(Type type) {
+        return !closed && options.types.contains(type);
+    }
+
+    public void scan(String address, String name, int rssi) {
+        if (accepts(Type.SCAN)) {
+            record(newRecord(Type.SCAN).put(address).put(name == null ? JSONObject.NULL : name).put(rssi));
+        }
+    }
+
+    public void lost(String address) {
+        if (accepts(Type.LOST)) {
+            record(newRecord(Type.LOST).put(address));
+        }
+    }
+
+    public void state(String deviceId, String state) {
+        if (accepts(Type.STATE)) {
+            record(newRecord(Type.STATE).put(deviceId).put(state));
+        }
+    }
+
+    public void error(String deviceId, String operation, BLEComError error) {
+        if (accepts(Type.ERROR)) {
+            record(newRecord(Type.ERROR)
+                    .put(deviceId == null ? JSONObject.NULL : deviceId)
+                    .put(operation)
+                    .put(error.getCode())
+                    .put(error.getMessage() == null ? JSONObject.NULL : error.getMessage()));
+        }
+    }
+
+    /**
+     * Delivers the pending events, stops accepting new ones and releases the callback
+     */
+    public void close() {
+        closed = true;
+        schedule(() -> {
+            flush();
+            if (!pluginResponse.isFinished()) {
+                pluginResponse.success();
+            }
+        }, 0);
+    }
+
+    public boolean isClosed() {
+        return closed || pluginResponse.isFinished();
+    }
+
+    private static JSONArray newRecord(Type type) {
+        return new JSONArray().put(type.id).put(System.currentTimeMillis());
+    }
+
+    /**
+     * The first event of a batch schedules its flush, so nothing runs while no event occurs
+     */
+    private void record(JSONArray event) {
+        boolean flushNow;
+        boolean schedule;
+        synchronized (this) {
+            if (pending.size() >= options.bufferSize) {
+                pending.poll();
+                dropped++;
+            }
+            pending.add(event);
+            flushNow = pending.size() == options.batchSize;
+            schedule = !flushScheduled;
+            flushScheduled = true;
+        }
+        if (flushNow) {
+            schedule(this::flush, 0);
+        } else if (schedule) {
+            schedule(this::flush, options.flushIntervalMs);
+        }
+    }
+
+    /**
+     * Events may still be recorded from the scanner and library threads once the plugin
+     * is destroyed and its timer shut down: they are then dropped
+     */
+    private void schedule(Runnable task, long delayMs) {
+        try {
+            timer.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            closed = true;
+        }
+    }
+
+    private void flush() {
+        List<JSONArray> events;
+        long droppedCount;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            events = new ArrayList<>(Math.min(pending.size(), options.batchSize));
+            while (!pending.isEmpty() && events.size() < options.batchSize) {
+                events.add(pending.poll());
+            }
+            droppedCount = dropped;
+            if (!pending.isEmpty()) {
+                // The rest goes in the next message
+                flushScheduled = true;
+                schedule(this::flush, 0);
+            }
+        }
+        if (!pluginResponse.isFinished()) {
+            pluginResponse.newResult(JSONBuilder.toEventBatch(events, droppedCount));
+        }
+    }
+}
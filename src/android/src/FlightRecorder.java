@@ -0,0 +1,165 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  FlightRecorder.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Always-on trace of the last requests, state changes and errors, kept in a fixed size ring.
+ *
+ * Events are stored in preallocated arrays, the strings they refer to (device ids,
+ * operations, codes, messages) by reference, so recording does not allocate.
+ * Writers claim a slot with an atomic increment and never block; a reader skips
+ * the slots overwritten while it reads them.
+ */
+class FlightRecorder {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final int FIELDS = 2;
+    private static final int KIND = 0;
+    private static final int SIZE = 1;
+
+    public enum Kind {
+        REQUEST("request"),
+        STATE("state"),
+        ERROR("error");
+
+        final String id;
+
+        Kind(String id) {
+            this.id = id;
+        }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    /**
+     * Event copied out of the ring, reused by the reader
+     */
+    public static class Event {
+        long timestamp;
+        Kind kind;
+        String deviceId;
+        String operation;
+        long durationNanos;
+        int size;
+        String code;
+        String message;
+    }
+
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+    /**
+     * Sequence + 1 of the event in each slot, 0 while it is written
+     */
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray timestamps;
+    private final AtomicLongArray durations;
+    private final AtomicIntegerArray fields;
+    private final AtomicReferenceArray<String> deviceIds;
+    private final AtomicReferenceArray<String> operations;
+    private final AtomicReferenceArray<String> codes;
+    private final AtomicReferenceArray<String> messages;
+
+    /**
+     * @param capacity rounded up to a power of 2
+     */
+    public FlightRecorder(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.timestamps = new AtomicLongArray(size);
+        this.durations = new AtomicLongArray(size);
+        this.fields = new AtomicIntegerArray(size * FIELDS);
+        this.deviceIds = new AtomicReferenceArray<>(size);
+        this.operations = new AtomicReferenceArray<>(size);
+        this.codes = new AtomicReferenceArray<>(size);
+        this.messages = new AtomicReferenceArray<>(size);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the number of events recorded since the start, including the overwritten ones
+     */
+    public long getRecordedCount() {
+        return cursor.get();
+    }
+
+    public void request(String deviceId, String operation, long durationNanos, int size) {
+        record(Kind.REQUEST, deviceId, operation, durationNanos, size, null, null);
+    }
+
+    public void state(String deviceId, String state) {
+        record(Kind.STATE, deviceId, "state", 0, 0, state, null);
+    }
+
+    public void error(String deviceId, String operation, String code, String message) {
+        record(Kind.ERROR, deviceId, operation, 0, 0, code, message);
+    }
+
+    private void record(Kind kind, String deviceId, String operation, long durationNanos, int size, String code, String message) {
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) sequence & mask;
+        int base = slot * FIELDS;
+        sequences.set(slot, 0);
+        timestamps.lazySet(slot, System.currentTimeMillis());
+        durations.lazySet(slot, durationNanos);
+        fields.lazySet(base + KIND, kind.ordinal());
+        fields.lazySet(base + SIZE, size);
+        deviceIds.lazySet(slot, deviceId);
+        operations.lazySet(slot, operation);
+        codes.lazySet(slot, code);
+        messages.lazySet(slot, message);
+        sequences.set(slot, sequence + 1);
+    }
+
+    /**
+     * Copies an event out of the ring
+     *
+     * @param sequence from getRecordedCount() - getCapacity() to getRecordedCount() - 1
+     * @return false if the event has been overwritten or is being written
+     */
+    public boolean read(long sequence, Event event) {
+        if (sequence < 0) {
+            return false;
+        }
+        int slot = (int) sequence & mask;
+        int base = slot * FIELDS;
+        if (sequences.get(slot) != sequence + 1) {
+            return false;
+        }
+        event.timestamp = timestamps.get(slot);
+        event.durationNanos = durations.get(slot);
+        event.kind = KINDS[fields.get(base + KIND)];
+        event.size = fields.get(base + SIZE);
+        event.deviceId = deviceIds.get(slot);
+        event.operation = operations.get(slot);
+        event.code = codes.get(slot);
+        event.message = messages.get(slot);
+        return sequences.get(slot) == sequence + 1;
+    }
+
+    /**
+     * @return the newest error still in the ring, or null
+     */
+    public Event getLastError() {
+        Event event = new Event();
+        long end = cursor.get();
+        for (long sequence = end - 1; sequence >= Math.max(end - getCapacity(), 0); sequence--) {
+            if (read(sequence, event) && event.kind == Kind.ERROR) {
+                return event;
+            }
+        }
+        return null;
+    }
+}
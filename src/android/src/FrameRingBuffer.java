@@ -0,0 +1,73 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  FrameRingBuffer.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded buffer of frames waiting to be delivered to JS.
+ * When full, either the oldest frame is overwritten or the new frame is dropped.
+ */
+class FrameRingBuffer {
+
+    public enum DropPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST;
+
+        public static DropPolicy parse(String value) {
+            return "newest".equalsIgnoreCase(value) ? DROP_NEWEST : DROP_OLDEST;
+        }
+    }
+
+    private final byte[][] frames;
+    private final DropPolicy dropPolicy;
+    private int head;
+    private int size;
+    private long dropped;
+
+    public FrameRingBuffer(int capacity, DropPolicy dropPolicy) {
+        this.frames = new byte[capacity][];
+        this.dropPolicy = dropPolicy;
+    }
+
+    public synchronized void offer(byte[] frame) {
+        if (size == frames.length) {
+            dropped++;
+            if (dropPolicy == DropPolicy.DROP_NEWEST) {
+                return;
+            }
+            head = (head + 1) % frames.length;
+            size--;
+        }
+        frames[(head + size) % frames.length] = frame;
+        size++;
+    }
+
+    /**
+     * @return up to max frames, oldest first
+     */
+    public synchronized List<byte[]> drain(int max) {
+        int count = Math.min(max, size);
+        List<byte[]> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(frames[head]);
+            frames[head] = null;
+            head = (head + 1) % frames.length;
+        }
+        size -= count;
+        return result;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+}
@@ -0,0 +1,139 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  GattAccess.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.bluetooth.BluetoothGatt;
+import android.util.Log;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Locale;
+
+/**
+ * Finds the BluetoothGatt used by a BLEProtocol, and the MTU the library keeps.
+ * The IoTize library does not expose them, so the fields of the protocol and of the
+ * objects it holds are searched for the first BluetoothGatt instance and the first
+ * int field named like "mtu".
+ *
+ * This depends on the internals of the library, not on its API: a version that no longer
+ * holds them within two levels of fields, or a shrinker removing or renaming those fields,
+ * makes the search fail. It is logged as an error, performance profiles then fail with
+ * GattNotAvailable or report that the negotiated MTU is unknown, and the GATT layout
+ * of known devices is not recorded. Only used through BLECom.getGatt and BLECom.getNegotiatedMtu.
+ */
+final class GattAccess {
+
+    private static final String TAG = "GattAccess";
+    private static final int MAX_DEPTH = 2;
+
+    private static volatile boolean gattMissingReported;
+    private static volatile boolean mtuMissingReported;
+
+    private GattAccess() {
+    }
+
+    /**
+     * @return the GATT of the link, or null if it is not connected or cannot be found
+     */
+    public static BluetoothGatt find(Object link) {
+        BluetoothGatt gatt;
+        try {
+            gatt = find(link, 0);
+        } catch (Exception e) {
+            Log.e(TAG, "Cannot access the GATT of " + link + ", the IoTize library internals changed", e);
+            return null;
+        }
+        if (gatt == null && !gattMissingReported) {
+            gattMissingReported = true;
+            Log.e(TAG, "No BluetoothGatt found in " + link.getClass().getName()
+                    + ", the IoTize library internals changed: performance profiles and known device layouts are disabled");
+        }
+        return gatt;
+    }
+
+    /**
+     * @return the MTU kept by the library for the link, or -1 if it cannot be found
+     */
+    public static int findMtu(Object link) {
+        Integer mtu;
+        try {
+            mtu = findMtu(link, 0);
+        } catch (Exception e) {
+            Log.e(TAG, "Cannot access the MTU of " + link + ", the IoTize library internals changed", e);
+            return -1;
+        }
+        if (mtu == null) {
+            if (!mtuMissingReported) {
+                mtuMissingReported = true;
+                Log.e(TAG, "No MTU field found in " + link.getClass().getName()
+                        + ", the IoTize library internals changed: the negotiated MTU is not reported");
+            }
+            return -1;
+        }
+        return mtu;
+    }
+
+    private static Integer findMtu(Object object, int depth) throws IllegalAccessException {
+        for (Class<?> type = object.getClass(); type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                if (field.getType() == int.class) {
+                    if (field.getName().toLowerCase(Locale.ROOT).contains("mtu")) {
+                        field.setAccessible(true);
+                        return field.getInt(object);
+                    }
+                    continue;
+                }
+                if (field.getType().isPrimitive()) {
+                    continue;
+                }
+                field.setAccessible(true);
+                Object value = field.get(object);
+                if (value != null && depth < MAX_DEPTH && isLibraryObject(value)) {
+                    Integer mtu = findMtu(value, depth + 1);
+                    if (mtu != null) {
+                        return mtu;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static BluetoothGatt find(Object object, int depth) throws IllegalAccessException {
+        for (Class<?> type = object.getClass(); type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                    continue;
+                }
+                field.setAccessible(true);
+                Object value = field.get(object);
+                if (value instanceof BluetoothGatt) {
+                    return (BluetoothGatt) value;
+                }
+                if (value != null && depth < MAX_DEPTH && isLibraryObject(value)) {
+                    BluetoothGatt gatt = find(value, depth + 1);
+                    if (gatt != null) {
+                        return gatt;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isLibraryObject(Object value) {
+        String name = value.getClass().getName();
+        return !value.getClass().isArray()
+                && !name.startsWith("java.")
+                && !name.startsWith("android.")
+                && !name.startsWith("kotlin.")
+                && !name.startsWith("io.reactivex.");
+    }
+}
@@ -0,0 +1,82 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  HexCodec.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+/**
+ * Hexadecimal codec of the bridge frames.
+ * Plain Java without Android dependencies, so that it can run on any JVM.
+ */
+final class HexCodec {
+
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+    /**
+     * Larger frames get their own buffer, so that workers do not keep large buffers alive
+     */
+    private static final int MAX_POOLED_CHARS = 4096;
+    /**
+     * Encoding runs on the device workers, each one reuses its buffer
+     */
+    private static final ThreadLocal<char[]> BUFFERS = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[512];
+        }
+    };
+
+    private HexCodec() {
+    }
+
+    public static String encode(byte[] data) {
+        int length = data.length * 2;
+        char[] chars = buffer(length);
+        for (int i = 0; i < data.length; i++) {
+            chars[2 * i] = DIGITS[(data[i] >> 4) & 0x0F];
+            chars[2 * i + 1] = DIGITS[data[i] & 0x0F];
+        }
+        return new String(chars, 0, length);
+    }
+
+    private static char[] buffer(int length) {
+        if (length > MAX_POOLED_CHARS) {
+            return new char[length];
+        }
+        char[] chars = BUFFERS.get();
+        if (chars.length < length) {
+            chars = new char[MAX_POOLED_CHARS];
+            BUFFERS.set(chars);
+        }
+        return chars;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the string is not a valid hexadecimal string
+     */
+    public static byte[] decode(String hexString) {
+        int length = hexString.length();
+        if (length % 2 != 0) {
+            throw new IllegalArgumentException("Odd number of hexadecimal digits");
+        }
+        byte[] data = new byte[length / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((digit(hexString.charAt(2 * i)) << 4) | digit(hexString.charAt(2 * i + 1)));
+        }
+        return data;
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        throw new IllegalArgumentException("Invalid hexadecimal digit " + c);
+    }
+}
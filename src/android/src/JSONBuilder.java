@@ -8,13 +8,17 @@ package com.iotize.plugin;
 
 import android.annotation.SuppressLint;
 import android.bluetooth.BluetoothDevice;
+import android.util.Base64;
 import android.util.Log;
 
 import com.iotize.android.communication.protocol.ble.scanner.BLEScanner;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.List;
+
 public class JSONBuilder {
 
     private static final String TAG = "JSONBuilder";
@@ -39,6 +43,86 @@ public class JSONBuilder {
         }
     }
 
+    public static JSONObject toJSONObject(DiscoveredDevice device) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("name", device.getName());
+            json.put("address", device.getAddress());
+            json.put("rssi", device.getRssi());
+            json.put("lastSeen", device.getLastSeen());
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    public static JSONArray toJSONArray(List<DiscoveredDevice> devices) {
+        JSONArray json = new JSONArray();
+        for (DiscoveredDevice device : devices) {
+            json.put(toJSONObject(device));
+        }
+        return json;
+    }
+
+    public static JSONObject toLostDevicesEvent(List<DiscoveredDevice> devices) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("lost", toJSONArray(devices));
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    public static JSONObject toScanEndedEvent(ScanDutyCycle.Session session) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("ended", toJSONObject(session));
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    public static JSONObject toJSONObject(ScanDutyCycle.Session session) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("profile", session.profile.id);
+            json.put("startedAt", session.startedAt);
+            json.put("durationMs", session.durationMs);
+            json.put("activeMs", session.activeMs);
+            json.put("devices", session.devices);
+            json.put("starts", session.starts);
+            json.put("timedOut", session.timedOut);
+            JSONObject timeToDiscover = new JSONObject();
+            for (int i = 0; i < session.discoverTargets.length; i++) {
+                if (session.timeToDiscover[i] >= 0) {
+                    timeToDiscover.put(String.valueOf(session.discoverTargets[i]), session.timeToDiscover[i]);
+                }
+            }
+            json.put("timeToDiscoverMs", timeToDiscover);
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
     public static JSONObject toJSONObject(BLEComError error) {
         try {
             JSONObject json = new JSONObject();
@@ -54,4 +138,302 @@ public class JSONBuilder {
         }
     }
 
+    public static JSONObject toJSONObject(DeviceExecutor executor, DeviceRegistry.State state) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("deviceId", executor.getDeviceId());
+            json.put("state", state.name());
+            json.put("depth", executor.getQueueDepth());
+            json.put("capacity", executor.getCapacity());
+            json.put("busy", executor.isBusy());
+            json.put("overflowPolicy", executor.getOverflowPolicy().name().toLowerCase());
+            json.put("executed", executor.getExecutedCount());
+            json.put("rejected", executor.getRejectedCount());
+            json.put("lastWaitMs", executor.getLastWaitMs());
+            json.put("averageWaitMs", executor.getAverageWaitMs());
+            json.put("maxWaitMs", executor.getMaxWaitMs());
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    public static JSONObject toBatchResult(String hexResponse) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("response", hexResponse);
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    public static JSONObject toBatchResult(BLEComError error) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("error", toJSONObject(error));
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    public static JSONObject toJSONObject(LatencyHistogram histogram) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("count", histogram.getCount());
+            json.put("meanMs", histogram.getMeanMs());
+            json.put("p50Ms", histogram.getPercentileMs(0.50));
+            json.put("p95Ms", histogram.getPercentileMs(0.95));
+            json.put("p99Ms", histogram.getPercentileMs(0.99));
+            json.put("maxMs", histogram.getMaxMs());
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    public static JSONObject toJSONObject(PluginMetrics metrics) {
+        try {
+            JSONObject json = new JSONObject();
+
+            JSONArray devices = new JSONArray();
+            for (PluginMetrics.DeviceMetrics device : metrics.getDevices()) {
+                JSONObject deviceJson = new JSONObject();
+                deviceJson.put("deviceId", device.deviceId);
+                deviceJson.put("requests", device.requests.get());
+                deviceJson.put("bytesOut", device.bytesOut.get());
+                deviceJson.put("bytesIn", device.bytesIn.get());
+                deviceJson.put("errors", device.errors.get());
+                deviceJson.put("cacheHits", device.cacheHits.get());
+                deviceJson.put("coalesced", device.coalesced.get());
+                deviceJson.put("reconnects", device.reconnects.get());
+                deviceJson.put("queueWait", toJSONObject(device.queueWait));
+                deviceJson.put("send", toJSONObject(device.send));
+                deviceJson.put("serialization", toJSONObject(device.serialization));
+                deviceJson.put("connect", toJSONObject(device.connect));
+                deviceJson.put("disconnect", toJSONObject(device.disconnect));
+                devices.put(deviceJson);
+            }
+            json.put("devices", devices);
+
+            JSONObject scan = new JSONObject();
+            scan.put("messages", metrics.scan().messages.get());
+            scan.put("devices", metrics.scan().devices.get());
+            scan.put("delivery", toJSONObject(metrics.scan().delivery));
+            ScanDutyCycle.Session lastSession = metrics.scan().lastSession;
+            if (lastSession != null) {
+                scan.put("lastSession", toJSONObject(lastSession));
+            }
+            json.put("scan", scan);
+
+            JSONObject startup = new JSONObject();
+            startup.put("warmStart", metrics.startup().warmStart);
+            startup.put("warmUpMs", metrics.startup().warmUp.get() / 1e6);
+            startup.put("firstScanResultMs", metrics.startup().firstScanResult.get() / 1e6);
+            startup.put("firstResponseMs", metrics.startup().firstResponse.get() / 1e6);
+            json.put("startup", startup);
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    public static JSONObject toEventBatch(List<JSONArray> events, long dropped) {
+        try {
+            JSONObject json = new JSONObject();
+
+            JSONArray array = new JSONArray();
+            for (JSONArray event : events) {
+                array.put(event);
+            }
+            json.put("events", array);
+            json.put("dropped", dropped);
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    public static JSONObject toStreamBatch(List<byte[]> frames, long dropped, long errors) {
+        try {
+            JSONObject json = new JSONObject();
+
+            JSONArray hexFrames = new JSONArray();
+            for (byte[] frame : frames) {
+                hexFrames.put(HexCodec.encode(frame));
+            }
+            json.put("frames", hexFrames);
+            json.put("dropped", dropped);
+            json.put("errors", errors);
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    public static JSONObject toJSONObject(String deviceId, PerformanceProfile.Result result) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("deviceId", deviceId);
+            json.put("profile", result.profile.id);
+            json.put("requestedMtu", result.requestedMtu);
+            json.put("mtuRequested", result.mtuRequested);
+            json.put("priorityRequested", result.priorityRequested);
+            json.put("negotiatedMtu", result.negotiatedMtu);
+            json.put("mtuConfirmed", result.mtuConfirmed);
+            if (result.warning != null) {
+                json.put("warning", result.warning);
+            }
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Progress of a bulk transfer, or its result when done
+     */
+    public static JSONObject toJSONObject(BulkTransfer transfer, boolean done) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("transferId", transfer.getId());
+            json.put("deviceId", transfer.getDeviceId());
+            json.put("sentFrames", transfer.getSentFrames());
+            json.put("totalFrames", transfer.getTotalFrames());
+            json.put("bytesSent", transfer.getBytesSent());
+            json.put("totalBytes", transfer.getTotalBytes());
+            json.put("kBps", transfer.getKBps());
+            json.put("done", done);
+            if (done && transfer.isCollectingResponses()) {
+                json.put("responses", Base64.encodeToString(transfer.getResponses(), Base64.NO_WRAP));
+            }
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    public static JSONArray toKnownDevices(List<KnownDeviceCache.KnownDevice> devices) {
+        JSONArray array = new JSONArray();
+        for (KnownDeviceCache.KnownDevice device : devices) {
+            array.put(toJSONObject(device));
+        }
+        return array;
+    }
+
+    public static JSONObject toJSONObject(KnownDeviceCache.KnownDevice device) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("address", device.address);
+            if (device.name != null) {
+                json.put("name", device.name);
+            }
+            json.put("lastConnected", device.lastConnected);
+            json.put("mtu", device.mtu);
+            if (!device.profile.isEmpty()) {
+                json.put("profile", device.profile);
+            }
+            JSONArray services = new JSONArray();
+            for (KnownDeviceCache.Service service : device.layout) {
+                services.put(service.uuid.toString());
+            }
+            json.put("services", services);
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    public static JSONObject toJSONObject(FlightRecorder.Event event) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("timestamp", event.timestamp);
+            json.put("deviceId", event.deviceId);
+            json.put("operation", event.operation);
+            json.put("code", event.code);
+            json.put("message", event.message);
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Events still in the recorder, oldest first
+     */
+    public static JSONObject toJSONObject(FlightRecorder recorder) {
+        try {
+            JSONObject json = new JSONObject();
+
+            long end = recorder.getRecordedCount();
+            JSONArray events = new JSONArray();
+            FlightRecorder.Event event = new FlightRecorder.Event();
+            for (long sequence = Math.max(end - recorder.getCapacity(), 0); sequence < end; sequence++) {
+                if (!recorder.read(sequence, event)) {
+                    continue;
+                }
+                JSONObject eventJson = new JSONObject();
+                eventJson.put("timestamp", event.timestamp);
+                eventJson.put("kind", event.kind.id);
+                eventJson.put("deviceId", event.deviceId);
+                eventJson.put("operation", event.operation);
+                eventJson.put("durationMs", event.durationNanos / 1e6);
+                eventJson.put("size", event.size);
+                eventJson.put("code", event.code);
+                eventJson.put("message", event.message);
+                events.put(eventJson);
+            }
+            json.put("capacity", recorder.getCapacity());
+            json.put("recorded", end);
+            json.put("events", events);
+
+            return json;
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Internal error", e);
+            throw new Error("INTERNAL ERROR: " + e.getMessage(), e);
+        }
+    }
 }
@@ -0,0 +1,301 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  KnownDeviceCache.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Devices connected before, with their GATT layout and the MTU last requested, kept on disk
+ * so that known devices can be connected without a scan after the application restarts.
+ * Plain Java without Android dependencies, so that it can run on any JVM.
+ *
+ * File format (big endian):
+ * <pre>
+ * magic "IZKD", version (short)
+ * count (int), then for each device:
+ *   address (UTF), name (UTF), lastConnected (long), mtu (int), profile (UTF)
+ *   service count (short), then for each service:
+ *     uuid (2 longs), characteristic count (short), then for each characteristic: uuid (2 longs), properties (int)
+ * </pre>
+ */
+class KnownDeviceCache {
+
+    private static final int MAGIC = 0x495A4B44;
+    public static final short VERSION = 1;
+    public static final int DEFAULT_MAX_DEVICES = 64;
+
+    public static class Characteristic {
+        final UUID uuid;
+        final int properties;
+
+        Characteristic(UUID uuid, int properties) {
+            this.uuid = uuid;
+            this.properties = properties;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Characteristic)) {
+                return false;
+            }
+            Characteristic characteristic = (Characteristic) other;
+            return uuid.equals(characteristic.uuid) && properties == characteristic.properties;
+        }
+
+        @Override
+        public int hashCode() {
+            return uuid.hashCode() * 31 + properties;
+        }
+    }
+
+    public static class Service {
+        final UUID uuid;
+        final List<Characteristic> characteristics;
+
+        Service(UUID uuid, List<Characteristic> characteristics) {
+            this.uuid = uuid;
+            this.characteristics = characteristics;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Service)) {
+                return false;
+            }
+            Service service = (Service) other;
+            return uuid.equals(service.uuid) && characteristics.equals(service.characteristics);
+        }
+
+        @Override
+        public int hashCode() {
+            return uuid.hashCode() * 31 + characteristics.hashCode();
+        }
+    }
+
+    public static class KnownDevice {
+        final String address;
+        String name;
+        long lastConnected;
+        /**
+         * 0 if no MTU has been requested
+         */
+        int mtu;
+        /**
+         * Performance profile last requested, empty if none
+         */
+        String profile = "";
+        List<Service> layout = Collections.emptyList();
+
+        KnownDevice(String address) {
+            this.address = address;
+        }
+    }
+
+    private final File file;
+    private final int maxDevices;
+    /**
+     * Access ordered, the first entry is the least recently used device
+     */
+    private final LinkedHashMap<String, KnownDevice> devices;
+
+    public KnownDeviceCache(File file, final int maxDevices) {
+        this.file = file;
+        this.maxDevices = maxDevices;
+        this.devices = new LinkedHashMap<String, KnownDevice>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, KnownDevice> eldest) {
+                return size() > KnownDeviceCache.this.maxDevices;
+            }
+        };
+    }
+
+    /**
+     * Loads the file, keeping the devices already recorded since the start.
+     * A corrupted or older version file is deleted.
+     */
+    public void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        List<KnownDevice> loaded;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            loaded = read(input);
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            throw e;
+        }
+        synchronized (this) {
+            for (KnownDevice device : loaded) {
+                if (!devices.containsKey(device.address)) {
+                    devices.put(device.address, device);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the file through a temporary file, so that a crash cannot leave a partial file
+     */
+    public void save() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+        synchronized (this) {
+            write(new ArrayList<>(devices.values()), new DataOutputStream(buffer));
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temporary)) {
+            buffer.writeTo(output);
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    public synchronized KnownDevice get(String address) {
+        return devices.get(address);
+    }
+
+    /**
+     * @return the devices, least recently used first
+     */
+    public synchronized List<KnownDevice> getAll() {
+        return new ArrayList<>(devices.values());
+    }
+
+    public synchronized void recordConnected(String address, String name, long now) {
+        KnownDevice device = getOrCreate(address);
+        if (name != null) {
+            device.name = name;
+        }
+        device.lastConnected = now;
+    }
+
+    public synchronized void recordProfile(String address, String profile, int mtu) {
+        KnownDevice device = getOrCreate(address);
+        device.profile = profile;
+        device.mtu = mtu;
+    }
+
+    /**
+     * Records the layout found after a connect
+     *
+     * @return false if it differs from the known layout, which is then replaced
+     */
+    public synchronized boolean updateLayout(String address, List<Service> layout) {
+        KnownDevice device = getOrCreate(address);
+        boolean matches = device.layout.isEmpty() || device.layout.equals(layout);
+        if (!matches) {
+            // The device has been updated or replaced, forget what was tuned for the previous one
+            device.mtu = 0;
+            device.profile = "";
+        }
+        device.layout = layout;
+        return matches;
+    }
+
+    public synchronized void remove(String address) {
+        devices.remove(address);
+    }
+
+    /**
+     * Must be called with the lock held
+     */
+    private KnownDevice getOrCreate(String address) {
+        KnownDevice device = devices.get(address);
+        if (device == null) {
+            device = new KnownDevice(address);
+            devices.put(address, device);
+        }
+        return device;
+    }
+
+    public static void write(List<KnownDevice> devices, DataOutput output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeInt(devices.size());
+        for (KnownDevice device : devices) {
+            output.writeUTF(device.address);
+            output.writeUTF(device.name == null ? "" : device.name);
+            output.writeLong(device.lastConnected);
+            output.writeInt(device.mtu);
+            output.writeUTF(device.profile);
+            output.writeShort(device.layout.size());
+            for (Service service : device.layout) {
+                writeUuid(service.uuid, output);
+                output.writeShort(service.characteristics.size());
+                for (Characteristic characteristic : service.characteristics) {
+                    writeUuid(characteristic.uuid, output);
+                    output.writeInt(characteristic.properties);
+                }
+            }
+        }
+    }
+
+    /**
+     * @throws IOException if the data is not a cache of the current version
+     */
+    public static List<KnownDevice> read(DataInput input) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a known device cache");
+        }
+        short version = input.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported known device cache version " + version);
+        }
+        int count = input.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid device count " + count);
+        }
+        List<KnownDevice> devices = new ArrayList<>(Math.min(count, DEFAULT_MAX_DEVICES));
+        for (int i = 0; i < count; i++) {
+            KnownDevice device = new KnownDevice(input.readUTF());
+            String name = input.readUTF();
+            device.name = name.isEmpty() ? null : name;
+            device.lastConnected = input.readLong();
+            device.mtu = input.readInt();
+            device.profile = input.readUTF();
+            int serviceCount = input.readUnsignedShort();
+            List<Service> layout = new ArrayList<>(serviceCount);
+            for (int j = 0; j < serviceCount; j++) {
+                UUID uuid = readUuid(input);
+                int characteristicCount = input.readUnsignedShort();
+                List<Characteristic> characteristics = new ArrayList<>(characteristicCount);
+                for (int k = 0; k < characteristicCount; k++) {
+                    characteristics.add(new Characteristic(readUuid(input), input.readInt()));
+                }
+                layout.add(new Service(uuid, characteristics));
+            }
+            device.layout = layout;
+            devices.add(device);
+        }
+        return devices;
+    }
+
+    private static void writeUuid(UUID uuid, DataOutput output) throws IOException {
+        output.writeLong(uuid.getMostSignificantBits());
+        output.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInput input) throws IOException {
+        return new UUID(input.readLong(), input.readLong());
+    }
+}
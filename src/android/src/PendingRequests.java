@@ -0,0 +1,167 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  PendingRequests.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Requests that can be cancelled by id or that have a deadline.
+ * Requests without requestId nor timeout option are not tracked.
+ */
+class PendingRequests {
+
+    public interface Listener {
+        /**
+         * Called once for an expired or cancelled request, which must be replied to with the error.
+         * The work has been cancelled, or is finishing and will not reply.
+         */
+        void onAborted(Request request, BLEComError error);
+    }
+
+    public static class Request {
+        final String id;
+        final String deviceId;
+        final String operation;
+        final PluginResponse pluginResponse;
+        private Cancellable work;
+        private ScheduledFuture<?> timeout;
+        private BLEComError abortError;
+        private boolean done;
+
+        Request(String id, String deviceId, String operation, PluginResponse pluginResponse) {
+            this.id = id;
+            this.deviceId = deviceId;
+            this.operation = operation;
+            this.pluginResponse = pluginResponse;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Request> requests = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final ScheduledExecutorService timer;
+    private final Listener listener;
+
+    public PendingRequests(ScheduledExecutorService timer, Listener listener) {
+        this.timer = timer;
+        this.listener = listener;
+    }
+
+    /**
+     * Registers a request before its work is queued
+     *
+     * @param options request options, with optional requestId and timeout (ms)
+     * @return the request, or null if it does not need to be tracked
+     * @throws BLEComError if a request with the same requestId is still pending
+     */
+    public Request start(String deviceId, String operation, JSONObject options, PluginResponse pluginResponse) throws BLEComError {
+        String requestId = options.optString("requestId", "");
+        long timeoutMs = options.optLong("timeout", 0);
+        if (requestId.isEmpty() && timeoutMs <= 0) {
+            return null;
+        }
+        if (requestId.isEmpty()) {
+            requestId = "#" + nextId.incrementAndGet();
+        }
+        final Request request = new Request(requestId, deviceId, operation, pluginResponse);
+        if (requests.putIfAbsent(requestId, request) != null) {
+            throw BLEComError.illegalArgument("Request " + requestId + " is already pending");
+        }
+        if (timeoutMs > 0) {
+            request.timeout = timer.schedule(
+                    () -> abort(request, BLEComError.timeout(operation, deviceId, timeoutMs)),
+                    timeoutMs, TimeUnit.MILLISECONDS
+            );
+        }
+        return request;
+    }
+
+    /**
+     * Attaches the queued work to the request, cancelling it if the request has been aborted meanwhile
+     */
+    public void attach(Request request, Cancellable work) {
+        if (request == null) {
+            return;
+        }
+        boolean aborted;
+        synchronized (request) {
+            request.work = work;
+            aborted = request.abortError != null;
+        }
+        if (aborted) {
+            work.cancel();
+        }
+    }
+
+    /**
+     * Must be called by the work of the request before replying
+     *
+     * @return false if the request has been aborted, and the work must not reply
+     */
+    public boolean complete(Request request) {
+        if (request == null) {
+            return true;
+        }
+        synchronized (request) {
+            if (request.abortError != null) {
+                return false;
+            }
+            request.done = true;
+        }
+        remove(request);
+        return true;
+    }
+
+    /**
+     * Must be called when the work of the request could not be queued, before reporting the error
+     *
+     * @return false if the request has already been aborted and replied to
+     */
+    public boolean discard(Request request) {
+        return complete(request);
+    }
+
+    /**
+     * @return true if the request was still pending and has been cancelled
+     */
+    public boolean cancel(String requestId) {
+        Request request = requests.get(requestId);
+        return request != null && abort(request, BLEComError.cancelled(requestId));
+    }
+
+    private boolean abort(Request request, BLEComError error) {
+        Cancellable work;
+        synchronized (request) {
+            if (request.done || request.abortError != null) {
+                return false;
+            }
+            // Set before cancelling, so that the interrupted work does not reply
+            request.abortError = error;
+            work = request.work;
+        }
+        // When the work is not queued yet, attach() cancels it. Work that cannot be cancelled
+        // any more may still finish, but complete() keeps it from replying, so the abort replies.
+        if (work != null) {
+            work.cancel();
+        }
+        remove(request);
+        listener.onAborted(request, error);
+        return true;
+    }
+
+    private void remove(Request request) {
+        requests.remove(request.id, request);
+        if (request.timeout != null) {
+            request.timeout.cancel(false);
+        }
+    }
+}
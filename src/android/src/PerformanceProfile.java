@@ -0,0 +1,169 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  PerformanceProfile.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.bluetooth.BluetoothGatt;
+import android.os.Build;
+
+import org.json.JSONObject;
+
+/**
+ * MTU and connection priority requested on the GATT of a device.
+ * highThroughput asks for a large MTU and a short connection interval,
+ * lowPower for a long connection interval, and balanced restores the defaults.
+ */
+class PerformanceProfile {
+
+    public static final int DEFAULT_MTU = 23;
+    public static final int HIGH_THROUGHPUT_MTU = 247;
+    public static final int MAX_MTU = 517;
+    /**
+     * Longest wait for the MTU exchange, the device queue is held meanwhile
+     */
+    public static final long MTU_EXCHANGE_TIMEOUT_MS = 1000;
+    private static final long MTU_POLL_INTERVAL_MS = 10;
+
+    public enum Name {
+        HIGH_THROUGHPUT("highThroughput", BluetoothGatt.CONNECTION_PRIORITY_HIGH, HIGH_THROUGHPUT_MTU),
+        BALANCED("balanced", BluetoothGatt.CONNECTION_PRIORITY_BALANCED, 0),
+        LOW_POWER("lowPower", BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER, 0);
+
+        final String id;
+        final int connectionPriority;
+        /**
+         * 0 keeps the current MTU
+         */
+        final int mtu;
+
+        Name(String id, int connectionPriority, int mtu) {
+            this.id = id;
+            this.connectionPriority = connectionPriority;
+            this.mtu = mtu;
+        }
+
+        public static Name parse(String value) throws BLEComError {
+            for (Name name : values()) {
+                if (name.id.equalsIgnoreCase(value)) {
+                    return name;
+                }
+            }
+            throw BLEComError.illegalArgument("Unknown performance profile " + value);
+        }
+    }
+
+    /**
+     * Reads the MTU negotiated by the IoTize library, which receives the MTU exchange callback
+     */
+    public interface MtuReader {
+        /**
+         * @return the current MTU of the link, or -1 if it cannot be read
+         */
+        int read();
+    }
+
+    public static class Result {
+        final Name profile;
+        final int requestedMtu;
+        final boolean mtuRequested;
+        final boolean priorityRequested;
+        /**
+         * MTU in use once the exchange is done, 0 if it cannot be read
+         */
+        final int negotiatedMtu;
+        /**
+         * True if the MTU exchange has been seen to complete
+         */
+        final boolean mtuConfirmed;
+        /**
+         * Why the profile may not be fully applied, null if it is
+         */
+        final String warning;
+
+        Result(Name profile, int requestedMtu, boolean mtuRequested, boolean priorityRequested, int negotiatedMtu, boolean mtuConfirmed, String warning) {
+            this.profile = profile;
+            this.requestedMtu = requestedMtu;
+            this.mtuRequested = mtuRequested;
+            this.priorityRequested = priorityRequested;
+            this.negotiatedMtu = negotiatedMtu;
+            this.mtuConfirmed = mtuConfirmed;
+            this.warning = warning;
+        }
+    }
+
+    private final Name name;
+    private final int mtu;
+
+    private PerformanceProfile(Name name, int mtu) {
+        this.name = name;
+        this.mtu = mtu;
+    }
+
+    /**
+     * @param json { profile: "highThroughput" | "balanced" | "lowPower", mtu: number }
+     * @return the profile or null if json does not define any
+     */
+    public static PerformanceProfile fromJSON(JSONObject json) throws BLEComError {
+        if (json == null) {
+            return null;
+        }
+        String profile = json.optString("profile", "");
+        if (profile.isEmpty()) {
+            return null;
+        }
+        Name name = Name.parse(profile);
+        return of(name, json.optInt("mtu", name.mtu));
+    }
+
+    public static PerformanceProfile of(Name name, int mtu) throws BLEComError {
+        if (mtu != 0 && (mtu < DEFAULT_MTU || mtu > MAX_MTU)) {
+            throw BLEComError.illegalArgument("MTU must be between " + DEFAULT_MTU + " and " + MAX_MTU);
+        }
+        return new PerformanceProfile(name, mtu);
+    }
+
+    /**
+     * Sends the requests to the stack, then waits for the MTU exchange, up to {@link #MTU_EXCHANGE_TIMEOUT_MS}.
+     * Must run on the device queue, so that no request is sent during the exchange.
+     * The GATT only reports the negotiated MTU to the callback of the IoTize library,
+     * so the exchange is seen through the MTU the library keeps.
+     */
+    public Result apply(BluetoothGatt gatt, MtuReader mtuReader) throws BLEComError {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            throw BLEComError.illegalArgument("Performance profiles require Android 5.0");
+        }
+        int previousMtu = mtuReader.read();
+        boolean priorityRequested = gatt.requestConnectionPriority(name.connectionPriority);
+        if (mtu == 0) {
+            return new Result(name, mtu, false, priorityRequested, Math.max(previousMtu, 0), true, null);
+        }
+        if (!gatt.requestMtu(mtu)) {
+            return new Result(name, mtu, false, priorityRequested, Math.max(previousMtu, 0), false,
+                    "MTU request refused by the Bluetooth stack");
+        }
+        if (previousMtu < 0) {
+            return new Result(name, mtu, true, priorityRequested, 0, false,
+                    "Negotiated MTU unknown: the IoTize library internals it is read from were not found");
+        }
+        long deadline = System.currentTimeMillis() + MTU_EXCHANGE_TIMEOUT_MS;
+        int currentMtu = previousMtu;
+        // A device that keeps the previous MTU cannot be told apart from a slow exchange, it waits for the timeout
+        while (currentMtu == previousMtu && currentMtu != mtu && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(MTU_POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            currentMtu = Math.max(mtuReader.read(), 0);
+        }
+        if (currentMtu == previousMtu && currentMtu != mtu) {
+            return new Result(name, mtu, true, priorityRequested, currentMtu, false,
+                    "No MTU exchange within " + MTU_EXCHANGE_TIMEOUT_MS + "ms");
+        }
+        return new Result(name, mtu, true, priorityRequested, currentMtu, true, null);
+    }
+}
@@ -0,0 +1,138 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  PluginMetrics.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of the plugin hot paths
+ */
+class PluginMetrics {
+
+    public static class DeviceMetrics {
+        final String deviceId;
+        final LatencyHistogram queueWait = new LatencyHistogram();
+        final LatencyHistogram send = new LatencyHistogram();
+        final LatencyHistogram serialization = new LatencyHistogram();
+        final LatencyHistogram connect = new LatencyHistogram();
+        final LatencyHistogram disconnect = new LatencyHistogram();
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong bytesOut = new AtomicLong();
+        final AtomicLong bytesIn = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong cacheHits = new AtomicLong();
+        final AtomicLong coalesced = new AtomicLong();
+        final AtomicLong reconnects = new AtomicLong();
+
+        DeviceMetrics(String deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        void reset() {
+            queueWait.reset();
+            send.reset();
+            serialization.reset();
+            connect.reset();
+            disconnect.reset();
+            requests.set(0);
+            bytesOut.set(0);
+            bytesIn.set(0);
+            errors.set(0);
+            cacheHits.set(0);
+            coalesced.set(0);
+            reconnects.set(0);
+        }
+    }
+
+    public static class ScanMetrics {
+        final LatencyHistogram delivery = new LatencyHistogram();
+        final AtomicLong messages = new AtomicLong();
+        final AtomicLong devices = new AtomicLong();
+        /**
+         * Statistics of the last scan session ended
+         */
+        volatile ScanDutyCycle.Session lastSession;
+
+        void reset() {
+            delivery.reset();
+            messages.set(0);
+            devices.set(0);
+        }
+    }
+
+    /**
+     * Times since the plugin initialization, in nanoseconds, 0 until it happened.
+     * They are measured once and are not reset.
+     */
+    public static class StartupMetrics {
+        volatile boolean warmStart;
+        final AtomicLong warmUp = new AtomicLong();
+        final AtomicLong firstScanResult = new AtomicLong();
+        final AtomicLong firstResponse = new AtomicLong();
+        private volatile long initializedAt = System.nanoTime();
+
+        void start(boolean warmStart) {
+            this.warmStart = warmStart;
+            this.initializedAt = System.nanoTime();
+        }
+
+        /**
+         * Records the time since the initialization, the first time only
+         */
+        void recordFirst(AtomicLong value) {
+            if (value.get() == 0) {
+                value.compareAndSet(0, Math.max(System.nanoTime() - initializedAt, 1));
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, DeviceMetrics> devices = new ConcurrentHashMap<>();
+    private final ScanMetrics scan = new ScanMetrics();
+    private final StartupMetrics startup = new StartupMetrics();
+
+    public DeviceMetrics device(String deviceId) {
+        DeviceMetrics metrics = devices.get(deviceId);
+        if (metrics == null) {
+            DeviceMetrics newMetrics = new DeviceMetrics(deviceId);
+            metrics = devices.putIfAbsent(deviceId, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    public Collection<DeviceMetrics> getDevices() {
+        return devices.values();
+    }
+
+    public ScanMetrics scan() {
+        return scan;
+    }
+
+    public StartupMetrics startup() {
+        return startup;
+    }
+
+    /**
+     * Counts a failure of the device. The failure itself is kept by the flight recorder.
+     */
+    public void recordError(String deviceId) {
+        if (deviceId != null) {
+            device(deviceId).errors.incrementAndGet();
+        }
+    }
+
+    public void reset() {
+        for (DeviceMetrics metrics : devices.values()) {
+            metrics.reset();
+        }
+        scan.reset();
+    }
+}
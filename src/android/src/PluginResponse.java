@@ -6,8 +6,6 @@
 //
 package com.iotize.plugin;
 
-import com.iotize.android.core.util.Helper;
-
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
@@ -43,6 +41,15 @@ public class PluginResponse {
         this.callbackContext.sendPluginResult(result);
     }
 
+    public void newResult(JSONArray data) {
+        PluginResult result = new PluginResult(
+                PluginResult.Status.OK,
+                data
+        );
+        result.setKeepCallback(true);
+        this.callbackContext.sendPluginResult(result);
+    }
+
     public void newResult(BLEComError error) {
         this.callbackContext.sendPluginResult(new PluginResult(
                 PluginResult.Status.ERROR,
@@ -51,7 +58,14 @@ public class PluginResponse {
     }
 
     public void success(byte[] response) {
-        this.callbackContext.success(Helper.ByteArrayToHexString(response));
+        this.callbackContext.success(HexCodec.encode(response));
+    }
+
+    /**
+     * Send response as an ArrayBuffer instead of an hexadecimal string
+     */
+    public void successBinary(byte[] response) {
+        this.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, response));
     }
 
     public void error(BLEComError err) {
@@ -74,6 +88,18 @@ public class PluginResponse {
         this.callbackContext.success(msg);
     }
 
+    public void success(JSONObject data) {
+        this.callbackContext.success(data);
+    }
+
+    public void success(JSONArray data) {
+        this.callbackContext.success(data);
+    }
+
+    public boolean isFinished() {
+        return this.callbackContext.isFinished();
+    }
+
     public CallbackContext getCallbackContext() {
         return callbackContext;
     }
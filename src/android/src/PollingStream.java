@@ -0,0 +1,176 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  PollingStream.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the same frame to a device periodically and streams the responses to JS
+ * over a kept callback. Responses are buffered in a bounded ring buffer and
+ * delivered in batches, so that a slow WebView cannot make native memory grow.
+ */
+class PollingStream {
+
+    private static final String TAG = "PollingStream";
+
+    public interface Poller {
+        /**
+         * Queue the poll on the device queue. The callback must be called once the poll is done.
+         * Called on the plugin timer, so it must not wait for room in the queue.
+         */
+        void poll(byte[] frame, PollCallback callback) throws BLEComError;
+    }
+
+    public interface PollCallback {
+        void onResponse(byte[] response);
+
+        void onError(BLEComError error);
+    }
+
+    public static class Options {
+        /**
+         * Id given by the caller, so that unsubscribe does not stop a newer stream of the device
+         */
+        String streamId = "";
+        long periodMs = 100;
+        long flushIntervalMs = 250;
+        int batchSize = 50;
+        int bufferSize = 256;
+        FrameRingBuffer.DropPolicy dropPolicy = FrameRingBuffer.DropPolicy.DROP_OLDEST;
+
+        public static Options fromJSON(JSONObject json) {
+            Options options = new Options();
+            options.streamId = json.optString("streamId", "");
+            options.periodMs = Math.max(json.optLong("periodMs", options.periodMs), 10);
+            options.flushIntervalMs = Math.max(json.optLong("flushIntervalMs", options.flushIntervalMs), 10);
+            options.batchSize = Math.max(json.optInt("batchSize", options.batchSize), 1);
+            options.bufferSize = Math.max(json.optInt("bufferSize", options.bufferSize), 1);
+            options.dropPolicy = FrameRingBuffer.DropPolicy.parse(json.optString("drop", "oldest"));
+            return options;
+        }
+    }
+
+    private final String deviceId;
+    private final byte[] frame;
+    private final Options options;
+    private final Poller poller;
+    private final PluginResponse pluginResponse;
+    private final FrameRingBuffer buffer;
+    private final AtomicBoolean pollPending = new AtomicBoolean();
+    private final AtomicLong errorCount = new AtomicLong();
+    private volatile boolean paused;
+    private ScheduledFuture<?> pollTask;
+    private ScheduledFuture<?> flushTask;
+
+    public PollingStream(String deviceId, byte[] frame, Options options, Poller poller, PluginResponse pluginResponse) {
+        this.deviceId = deviceId;
+        this.frame = frame;
+        this.options = options;
+        this.poller = poller;
+        this.pluginResponse = pluginResponse;
+        this.buffer = new FrameRingBuffer(options.bufferSize, options.dropPolicy);
+    }
+
+    public synchronized void start(ScheduledExecutorService timer) {
+        pollTask = timer.scheduleAtFixedRate(this::poll, 0, options.periodMs, TimeUnit.MILLISECONDS);
+        flushTask = timer.scheduleAtFixedRate(this::flush, options.flushIntervalMs, options.flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (pollTask != null) {
+            pollTask.cancel(false);
+            pollTask = null;
+        }
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+    }
+
+    /**
+     * A new poll is only queued once the previous one is done,
+     * so that a slow device does not fill its queue with polls
+     */
+    private void poll() {
+        if (paused || !pollPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            poller.poll(frame, new PollCallback() {
+                @Override
+                public void onResponse(byte[] response) {
+                    if (response == null) {
+                        // The device did not answer, counted like a failed poll
+                        errorCount.incrementAndGet();
+                    } else {
+                        buffer.offer(response);
+                    }
+                    pollPending.set(false);
+                }
+
+                @Override
+                public void onError(BLEComError error) {
+                    errorCount.incrementAndGet();
+                    pollPending.set(false);
+                }
+            });
+        } catch (BLEComError e) {
+            // The tick is dropped, the next one polls again
+            Log.w(TAG, "Cannot poll device " + deviceId, e);
+            errorCount.incrementAndGet();
+            pollPending.set(false);
+        }
+    }
+
+    /**
+     * Must not throw: an exception would cancel the periodic flush and stall the stream
+     */
+    private void flush() {
+        if (pluginResponse.isFinished()) {
+            stop();
+            return;
+        }
+        try {
+            List<byte[]> frames = buffer.drain(options.batchSize);
+            if (frames.isEmpty()) {
+                return;
+            }
+            pluginResponse.newResult(JSONBuilder.toStreamBatch(frames, buffer.getDroppedCount(), errorCount.get()));
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Cannot flush the stream of device " + deviceId, e);
+            errorCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Polls are skipped while paused, for instance while the link reconnects. Responses already buffered are still delivered.
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getStreamId() {
+        return options.streamId;
+    }
+
+    public PluginResponse getPluginResponse() {
+        return pluginResponse;
+    }
+}
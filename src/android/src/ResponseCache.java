@@ -0,0 +1,222 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  ResponseCache.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Responses to idempotent reads, keyed by device and request frame.
+ * Identical requests sent while one is in flight share its response, and
+ * responses are served from a small per device LRU cache until their TTL expires.
+ * Invalidating a device drops its cache, and the responses in flight are not stored.
+ */
+class ResponseCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+
+    public interface Waiter {
+        void onResponse(byte[] response);
+
+        void onError(BLEComError error);
+    }
+
+    public interface Fetcher {
+        /**
+         * Queue the device exchange of a flight, which must end with {@link #complete} or {@link #fail}
+         */
+        Cancellable fetch(Flight flight) throws BLEComError;
+    }
+
+    public static class Flight {
+        final String deviceId;
+        final ByteBuffer key;
+        final long generation;
+        final List<Waiter> waiters = new ArrayList<>(2);
+        long ttlMs;
+        Cancellable work;
+        boolean done;
+
+        Flight(String deviceId, ByteBuffer key, long generation, long ttlMs) {
+            this.deviceId = deviceId;
+            this.key = key;
+            this.generation = generation;
+            this.ttlMs = ttlMs;
+        }
+    }
+
+    private static class Entry {
+        final byte[] response;
+        final long expiresAt;
+
+        Entry(byte[] response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class DeviceCache {
+        final LinkedHashMap<ByteBuffer, Entry> entries;
+        final Map<ByteBuffer, Flight> inFlight = new HashMap<>();
+        long generation;
+
+        DeviceCache(final int maxEntries) {
+            this.entries = new LinkedHashMap<ByteBuffer, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ByteBuffer, ResponseCache.Entry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+    }
+
+    private final int maxEntries;
+    private final PluginMetrics metrics;
+    private final Map<String, DeviceCache> devices = new HashMap<>();
+
+    public ResponseCache(int maxEntries, PluginMetrics metrics) {
+        this.maxEntries = maxEntries;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Answers from the cache, joins the identical request in flight, or fetches the response
+     *
+     * @return a handle to stop waiting for the response. The exchange is cancelled once no request waits for it.
+     */
+    public Cancellable request(String deviceId, byte[] data, long ttlMs, final Waiter waiter, Fetcher fetcher) {
+        final Flight flight;
+        byte[] cached = null;
+        boolean leader = false;
+        synchronized (this) {
+            DeviceCache device = device(deviceId);
+            ByteBuffer key = ByteBuffer.wrap(data);
+            Entry entry = device.entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                cached = entry.response;
+                flight = null;
+            } else {
+                Flight current = device.inFlight.get(key);
+                if (current == null) {
+                    current = new Flight(deviceId, key, device.generation, ttlMs);
+                    device.inFlight.put(key, current);
+                    leader = true;
+                } else {
+                    current.ttlMs = Math.max(current.ttlMs, ttlMs);
+                }
+                current.waiters.add(waiter);
+                flight = current;
+            }
+        }
+
+        if (flight == null) {
+            metrics.device(deviceId).cacheHits.incrementAndGet();
+            waiter.onResponse(cached);
+            return () -> false;
+        }
+        if (!leader) {
+            metrics.device(deviceId).coalesced.incrementAndGet();
+        } else {
+            try {
+                Cancellable work = fetcher.fetch(flight);
+                synchronized (this) {
+                    flight.work = work;
+                }
+            } catch (BLEComError e) {
+                fail(flight, e);
+            }
+        }
+        return () -> leave(flight, waiter);
+    }
+
+    public void complete(Flight flight, byte[] response) {
+        List<Waiter> waiters;
+        synchronized (this) {
+            DeviceCache device = finish(flight);
+            if (device.generation == flight.generation && response != null) {
+                device.entries.put(flight.key, new Entry(response, System.currentTimeMillis() + flight.ttlMs));
+            }
+            waiters = new ArrayList<>(flight.waiters);
+        }
+        for (Waiter waiter : waiters) {
+            waiter.onResponse(response);
+        }
+    }
+
+    public void fail(Flight flight, BLEComError error) {
+        List<Waiter> waiters;
+        synchronized (this) {
+            finish(flight);
+            waiters = new ArrayList<>(flight.waiters);
+        }
+        for (Waiter waiter : waiters) {
+            waiter.onError(error);
+        }
+    }
+
+    /**
+     * Drops the cached responses of a device, after a write or a disconnect
+     */
+    public synchronized void invalidate(String deviceId) {
+        DeviceCache device = devices.get(deviceId);
+        if (device != null) {
+            device.generation++;
+            device.entries.clear();
+            // Flights already queued may run before the write, later requests must not join them
+            device.inFlight.clear();
+        }
+    }
+
+    private boolean leave(Flight flight, Waiter waiter) {
+        Cancellable work = null;
+        synchronized (this) {
+            if (flight.done || !flight.waiters.remove(waiter)) {
+                return false;
+            }
+            if (flight.waiters.isEmpty()) {
+                removeFlight(device(flight.deviceId), flight);
+                work = flight.work;
+            }
+        }
+        if (work != null) {
+            work.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * Must be called with the lock held
+     */
+    private DeviceCache finish(Flight flight) {
+        DeviceCache device = device(flight.deviceId);
+        removeFlight(device, flight);
+        flight.done = true;
+        return device;
+    }
+
+    private static void removeFlight(DeviceCache device, Flight flight) {
+        if (device.inFlight.get(flight.key) == flight) {
+            device.inFlight.remove(flight.key);
+        }
+    }
+
+    /**
+     * Must be called with the lock held
+     */
+    private DeviceCache device(String deviceId) {
+        DeviceCache device = devices.get(deviceId);
+        if (device == null) {
+            device = new DeviceCache(maxEntries);
+            devices.put(deviceId, device);
+        }
+        return device;
+    }
+}
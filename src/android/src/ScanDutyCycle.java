@@ -0,0 +1,359 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  ScanDutyCycle.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a scan session by alternating scan windows and pauses, according to a profile.
+ * lowLatency scans continuously, balanced and opportunistic scan a part of the time,
+ * and adaptive scans continuously until no new device shows up for a while, then
+ * backs off with longer and longer pauses until a new device is found.
+ *
+ * The session can be time-boxed, and the scan starts are spaced so that the
+ * system does not throttle the application. The time taken to discover a given
+ * number of devices is measured for each session.
+ */
+class ScanDutyCycle {
+
+    public interface Scanner {
+        void start();
+
+        void stop();
+    }
+
+    public interface Listener {
+        /**
+         * Called when a time-boxed session ends by itself
+         */
+        void onSessionEnded(Session session);
+    }
+
+    public enum Profile {
+        LOW_LATENCY("lowLatency", 0, 0),
+        BALANCED("balanced", 4000, 6000),
+        OPPORTUNISTIC("opportunistic", 2000, 18000),
+        ADAPTIVE("adaptive", 2000, 2000);
+
+        final String id;
+        /**
+         * 0 scans continuously
+         */
+        final long windowMs;
+        final long pauseMs;
+
+        Profile(String id, long windowMs, long pauseMs) {
+            this.id = id;
+            this.windowMs = windowMs;
+            this.pauseMs = pauseMs;
+        }
+
+        public static Profile parse(String value) throws BLEComError {
+            for (Profile profile : values()) {
+                if (profile.id.equalsIgnoreCase(value)) {
+                    return profile;
+                }
+            }
+            throw BLEComError.illegalArgument("Unknown scan profile " + value);
+        }
+    }
+
+    public static class Options {
+        Profile profile = Profile.LOW_LATENCY;
+        /**
+         * 0 scans until stopScan
+         */
+        long durationMs;
+        /**
+         * Time without new device before the adaptive profile backs off
+         */
+        long idleMs = 5000;
+        long maxPauseMs = 30000;
+        int[] discoverTargets = {1, 5, 10};
+
+        public static Options fromJSON(JSONObject json) throws BLEComError {
+            Options options = new Options();
+            String profile = json.optString("profile", "");
+            if (!profile.isEmpty()) {
+                options.profile = Profile.parse(profile);
+            }
+            options.durationMs = Math.max(json.optLong("durationMs", 0), 0);
+            options.idleMs = Math.max(json.optLong("idleMs", options.idleMs), 100);
+            options.maxPauseMs = Math.max(json.optLong("maxPauseMs", options.maxPauseMs), options.profile.pauseMs);
+            JSONArray targets = json.optJSONArray("discoverTargets");
+            if (targets != null) {
+                options.discoverTargets = new int[targets.length()];
+                for (int i = 0; i < targets.length(); i++) {
+                    options.discoverTargets[i] = Math.max(targets.optInt(i, 1), 1);
+                }
+                Arrays.sort(options.discoverTargets);
+            }
+            return options;
+        }
+    }
+
+    /**
+     * Spaces the scan starts of the application: Android ignores the scans
+     * started more than 5 times within 30 seconds
+     */
+    public static class StartThrottle {
+        static final int MAX_STARTS = 5;
+        static final long WINDOW_MS = 30000;
+
+        private final long[] starts = new long[MAX_STARTS];
+        private int next;
+
+        /**
+         * @return the time to wait before the next start, 0 if it can start now
+         */
+        public synchronized long getDelayMs(long now) {
+            long oldest = starts[next];
+            return oldest == 0 ? 0 : Math.max(oldest + WINDOW_MS - now, 0);
+        }
+
+        public synchronized void recordStart(long now) {
+            starts[next] = now;
+            next = (next + 1) % MAX_STARTS;
+        }
+    }
+
+    public static class Session {
+        final Profile profile;
+        final long startedAt;
+        final int[] discoverTargets;
+        /**
+         * Time (ms) from the session start to each discover target, -1 until reached
+         */
+        final long[] timeToDiscover;
+        long durationMs;
+        long activeMs;
+        int devices;
+        int starts;
+        boolean timedOut;
+
+        Session(Profile profile, long startedAt, int[] discoverTargets) {
+            this.profile = profile;
+            this.startedAt = startedAt;
+            this.discoverTargets = discoverTargets;
+            this.timeToDiscover = new long[discoverTargets.length];
+            Arrays.fill(timeToDiscover, -1);
+        }
+
+        Session(Session other) {
+            this.profile = other.profile;
+            this.startedAt = other.startedAt;
+            this.discoverTargets = other.discoverTargets;
+            this.timeToDiscover = other.timeToDiscover.clone();
+            this.durationMs = other.durationMs;
+            this.activeMs = other.activeMs;
+            this.devices = other.devices;
+            this.starts = other.starts;
+            this.timedOut = other.timedOut;
+        }
+    }
+
+    private final Options options;
+    private final Scanner scanner;
+    private final ScheduledExecutorService timer;
+    private final StartThrottle throttle;
+    private final Listener listener;
+    private final Set<String> seen = new HashSet<>();
+    private Session session;
+    private long startNanos;
+    private boolean running;
+    private boolean scanning;
+    private long scanningSince;
+    private long activeNanos;
+    private long lastNewDeviceAt;
+    private boolean backedOff;
+    private boolean newDeviceInWindow;
+    private long pauseMs;
+    private ScheduledFuture<?> nextStep;
+    private ScheduledFuture<?> endTask;
+
+    public ScanDutyCycle(Options options, Scanner scanner, ScheduledExecutorService timer, StartThrottle throttle, Listener listener) {
+        this.options = options;
+        this.scanner = scanner;
+        this.timer = timer;
+        this.throttle = throttle;
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        session = new Session(options.profile, System.currentTimeMillis(), options.discoverTargets);
+        startNanos = System.nanoTime();
+        lastNewDeviceAt = startNanos;
+        pauseMs = options.profile.pauseMs;
+        running = true;
+        if (options.durationMs > 0) {
+            endTask = timer.schedule(() -> finish(true), options.durationMs, TimeUnit.MILLISECONDS);
+        }
+        resume();
+    }
+
+    /**
+     * Ends the session
+     *
+     * @return the session statistics
+     */
+    public Session stop() {
+        return finish(false);
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Counts a device seen during the session
+     */
+    public synchronized void onDevice(String address) {
+        if (!running || !seen.add(address)) {
+            return;
+        }
+        long now = System.nanoTime();
+        session.devices++;
+        for (int i = 0; i < session.discoverTargets.length; i++) {
+            if (session.discoverTargets[i] == session.devices) {
+                session.timeToDiscover[i] = TimeUnit.NANOSECONDS.toMillis(now - startNanos);
+            }
+        }
+        lastNewDeviceAt = now;
+        newDeviceInWindow = true;
+        if (options.profile == Profile.ADAPTIVE && backedOff) {
+            // Devices are showing up again, scan continuously
+            backedOff = false;
+            pauseMs = options.profile.pauseMs;
+            if (scanning) {
+                schedule(this::checkIdle, options.idleMs);
+            }
+        }
+    }
+
+    private void resume() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long delay = throttle.getDelayMs(now);
+            if (delay > 0) {
+                schedule(this::resume, delay);
+                return;
+            }
+            throttle.recordStart(now);
+            scanner.start();
+            scanning = true;
+            scanningSince = System.nanoTime();
+            newDeviceInWindow = false;
+            session.starts++;
+            long windowMs = getWindowMs();
+            if (windowMs > 0) {
+                schedule(this::pause, windowMs);
+            } else if (options.profile == Profile.ADAPTIVE) {
+                schedule(this::checkIdle, options.idleMs);
+            }
+        }
+    }
+
+    private void pause() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            stopScanner();
+            if (backedOff && !newDeviceInWindow) {
+                pauseMs = Math.min(pauseMs * 2, options.maxPauseMs);
+            }
+            schedule(this::resume, pauseMs);
+        }
+    }
+
+    /**
+     * Adaptive profile: backs off once no new device has shown up for idleMs
+     */
+    private void checkIdle() {
+        synchronized (this) {
+            if (!running || backedOff) {
+                return;
+            }
+            long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastNewDeviceAt);
+            if (idleMs < options.idleMs) {
+                schedule(this::checkIdle, options.idleMs - idleMs);
+                return;
+            }
+            backedOff = true;
+            pause();
+        }
+    }
+
+    private long getWindowMs() {
+        if (options.profile == Profile.ADAPTIVE) {
+            return backedOff ? options.profile.windowMs : 0;
+        }
+        return options.profile.windowMs;
+    }
+
+    private Session finish(boolean timedOut) {
+        Session result;
+        synchronized (this) {
+            if (!running) {
+                return session == null ? null : new Session(session);
+            }
+            running = false;
+            if (nextStep != null) {
+                nextStep.cancel(false);
+                nextStep = null;
+            }
+            if (endTask != null) {
+                endTask.cancel(false);
+                endTask = null;
+            }
+            stopScanner();
+            session.durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            session.activeMs = TimeUnit.NANOSECONDS.toMillis(activeNanos);
+            session.timedOut = timedOut;
+            result = new Session(session);
+        }
+        if (timedOut) {
+            listener.onSessionEnded(result);
+        }
+        return result;
+    }
+
+    private void stopScanner() {
+        if (scanning) {
+            scanner.stop();
+            scanning = false;
+            activeNanos += System.nanoTime() - scanningSince;
+        }
+    }
+
+    /**
+     * Scanner callbacks may still arrive once the plugin is destroyed and its timer shut down,
+     * the cycle then stops there
+     */
+    private void schedule(Runnable step, long delayMs) {
+        if (nextStep != null) {
+            nextStep.cancel(false);
+        }
+        try {
+            nextStep = timer.schedule(step, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            nextStep = null;
+        }
+    }
+}
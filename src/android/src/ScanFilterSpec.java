@@ -0,0 +1,115 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  ScanFilterSpec.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Scan filter given to startScan, applied to each advertisement before any JSON is built.
+ * All the criteria given must match.
+ */
+class ScanFilterSpec {
+
+    private String namePrefix;
+    private Pattern namePattern;
+    private Integer minRssi;
+    /**
+     * Upper case, as reported by BluetoothDevice.getAddress
+     */
+    private Set<String> addresses;
+
+    /**
+     * @return the filter or null if json does not define any criteria
+     */
+    public static ScanFilterSpec fromJSON(JSONObject json) throws BLEComError {
+        if (json == null) {
+            return null;
+        }
+        ScanFilterSpec filter = new ScanFilterSpec();
+        boolean hasCriteria = false;
+
+        String namePrefix = json.optString("namePrefix", "");
+        if (!namePrefix.isEmpty()) {
+            filter.namePrefix = namePrefix;
+            hasCriteria = true;
+        }
+        String nameRegex = json.optString("nameRegex", "");
+        if (!nameRegex.isEmpty()) {
+            try {
+                filter.namePattern = Pattern.compile(nameRegex);
+            } catch (PatternSyntaxException e) {
+                throw BLEComError.illegalArgument("Invalid name regex " + nameRegex);
+            }
+            hasCriteria = true;
+        }
+        if (json.has("serviceUuids")) {
+            // BLEScanner only gives the device and its rssi, not the advertised services
+            throw BLEComError.illegalArgument("Scan filter serviceUuids is not supported");
+        }
+        if (json.has("minRssi")) {
+            filter.minRssi = json.optInt("minRssi");
+            hasCriteria = true;
+        }
+        JSONArray addresses = json.optJSONArray("addresses");
+        if (addresses != null && addresses.length() > 0) {
+            filter.addresses = new HashSet<>();
+            for (int i = 0; i < addresses.length(); i++) {
+                filter.addresses.add(addresses.optString(i).toUpperCase(Locale.ROOT));
+            }
+            hasCriteria = true;
+        }
+        return hasCriteria ? filter : null;
+    }
+
+    /**
+     * Cheapest criteria are checked first. Called for each advertisement, so it does not allocate.
+     */
+    public boolean matches(String address, String name, int rssi) {
+        if (addresses != null && (address == null || !matchesAddress(address))) {
+            return false;
+        }
+        if (minRssi != null && rssi < minRssi) {
+            return false;
+        }
+        if (namePrefix != null && (name == null || !name.startsWith(namePrefix))) {
+            return false;
+        }
+        return namePattern == null || (name != null && namePattern.matcher(name).matches());
+    }
+
+    private boolean matchesAddress(String address) {
+        if (addresses.contains(address)) {
+            return true;
+        }
+        if (!hasLowerCase(address)) {
+            return false;
+        }
+        // Not reported by Android, which gives upper case addresses
+        for (String candidate : addresses) {
+            if (candidate.equalsIgnoreCase(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasLowerCase(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isLowerCase(value.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,123 @@
+//
+//  Copyright 2018 IoTize SAS Inc.  Licensed under the MIT license. 
+//
+//  ScanResultCoalescer.java
+//  device-com-ble.cordova BLE Cordova Plugin
+//
+package com.iotize.plugin;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges advertisements by device address and delivers the changed devices
+ * in batches, every flush interval or as soon as the batch size is reached.
+ * Devices lost by the cache are delivered on the same flush.
+ */
+class ScanResultCoalescer {
+
+    public interface Listener {
+        void onDevicesChanged(List<DiscoveredDevice> devices);
+
+        void onDevicesLost(List<DiscoveredDevice> devices);
+    }
+
+    public static class Options {
+        long flushIntervalMs = 500;
+        int batchSize = 50;
+        /**
+         * Weight of a new rssi value, 1 keeps the latest value
+         */
+        double rssiSmoothing = 1;
+
+        public static Options fromJSON(JSONObject json) {
+            Options options = new Options();
+            options.flushIntervalMs = Math.max(json.optLong("flushIntervalMs", options.flushIntervalMs), 10);
+            options.batchSize = Math.max(json.optInt("batchSize", options.batchSize), 1);
+            if ("smoothed".equals(json.optString("rssi", "latest"))) {
+                options.rssiSmoothing = json.optDouble("rssiSmoothing", 0.3);
+            }
+            return options;
+        }
+    }
+
+    private final Options options;
+    private final DiscoveredDeviceCache cache;
+    private final Listener listener;
+    private final LinkedHashSet<DiscoveredDevice> pending = new LinkedHashSet<>();
+    private final ScheduledExecutorService timer;
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * @param timer plugin timer, which runs the periodic flush
+     */
+    public ScanResultCoalescer(Options options, DiscoveredDeviceCache cache, ScheduledExecutorService timer, Listener listener) {
+        this.options = options;
+        this.cache = cache;
+        this.timer = timer;
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (flushTask == null) {
+            flushTask = timer.scheduleAtFixedRate(
+                    this::flush,
+                    options.flushIntervalMs, options.flushIntervalMs, TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    public synchronized void stop() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        pending.clear();
+    }
+
+    public void onAdvertisement(String address, String name, int rssi) {
+        boolean batchFull;
+        synchronized (this) {
+            DiscoveredDevice device = cache.update(address, name, rssi, options.rssiSmoothing, System.currentTimeMillis());
+            if (device.hasChanged()) {
+                pending.add(device);
+            }
+            batchFull = pending.size() >= options.batchSize;
+        }
+        if (batchFull) {
+            flush();
+        }
+    }
+
+    /**
+     * Delivers the devices that changed since the last flush.
+     * Runs under the lock so that batches are delivered in order.
+     */
+    public synchronized void flush() {
+        List<DiscoveredDevice> lost = cache.drainLost(System.currentTimeMillis());
+        if (!lost.isEmpty()) {
+            pending.removeAll(lost);
+            listener.onDevicesLost(lost);
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<DiscoveredDevice> changed = new ArrayList<>(pending.size());
+        for (DiscoveredDevice device : pending) {
+            if (device.hasChanged()) {
+                device.markEmitted();
+                changed.add(device);
+            }
+        }
+        pending.clear();
+        if (!changed.isEmpty()) {
+            listener.onDevicesChanged(changed);
+        }
+    }
+}
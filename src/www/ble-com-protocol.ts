@@ -13,18 +13,45 @@ import {
     ComProtocolSendOptions,
 } from '@iotize/device-client.js/protocol/api/com-protocol.interface';
 import { QueueComProtocol } from '@iotize/device-client.js/protocol/impl/queue-com-protocol';
-import { from, Observable, Subject, Subscription } from 'rxjs';
-import { filter, first } from 'rxjs/operators';
+import { from, Observable, Subject, Subscription, throwError } from 'rxjs';
+import { filter, first, map } from 'rxjs/operators';
 
 import { CordovaInterface } from './cordova-interface';
+import { CordovaBLEBatchOptions, CordovaBLEBatchResult, CordovaBLEConnectOptions, CordovaBLEPerformanceOptions, CordovaBLEPerformanceResult, CordovaBLEQueueStats, CordovaBLERequestOptions, CordovaBLEStreamBatch, CordovaBLEStreamOptions, CordovaBLETransferOptions, CordovaBLETransferProgress } from './definitions';
 import { debug } from './logger';
 
+export interface BLEBatchResult {
+    response?: Uint8Array;
+    error?: CordovaBLEBatchResult['error'];
+}
+
 declare var iotizeBLE: CordovaInterface;
+declare var cordova: any;
 
 export class BLEComProtocol extends QueueComProtocol {
+    private static lastRequestId: number = 0;
+    private static lastStreamId: number = 0;
+
     _connectionChangeObservable: any;
 
     private deviceId: string = "";
+    /**
+     * Native ids of the requests sent and not answered yet, to cancel them
+     */
+    private pendingRequestIds: Set<string> = new Set();
+    /**
+     * Send frames as ArrayBuffer instead of hexadecimal strings.
+     * Only implemented by the android platform for now.
+     */
+    binaryTransport: boolean = typeof cordova !== 'undefined' && cordova.platformId === 'android';
+    /**
+     * Only the android platform can cancel requests
+     */
+    private cancellableRequests: boolean = typeof cordova !== 'undefined' && cordova.platformId === 'android';
+    /**
+     * Native connect options (android only)
+     */
+    connectOptions: CordovaBLEConnectOptions = {};
     _connectionStateSubject: Subject<ConnectionState>;
     _connectionStateSubscription: Subscription;
 
@@ -54,7 +81,7 @@ export class BLEComProtocol extends QueueComProtocol {
             debug('_connect observable: onError', error);
             this._connectionStateSubject.error(error);
         };
-        iotizeBLE.connect(this.deviceId, onConnectionStateChange, onError);
+        iotizeBLE.connect(this.deviceId, onConnectionStateChange, onError, this.connectOptions);
 
         return this._connectionStateSubject.pipe(
             filter(state => state == ConnectionState.CONNECTED),
@@ -78,16 +105,172 @@ export class BLEComProtocol extends QueueComProtocol {
         throw new Error("Method not implemented.");
     }
 
+    /**
+     * Unsubscribing before the response cancels the native request (android only)
+     */
     send(data: Uint8Array, options?: ComProtocolSendOptions): Observable<any> {
-        let promise = this._cordovaCallToPromise<string>(
+        // The native side gives up on the request after the same delay, so that it does not hold the device queue
+        const requestOptions: CordovaBLERequestOptions = {
+            timeout: this.options.send ? this.options.send.timeout : undefined
+        };
+        if (this.binaryTransport) {
+            return this._cordovaRequestToObservable<ArrayBuffer>(
+                iotizeBLE.sendBinary,
+                data.buffer.slice(data.byteOffset, data.byteOffset + data.byteLength),
+                requestOptions
+            )
+                .pipe(map((buffer: ArrayBuffer) => new Uint8Array(buffer)));
+        }
+        return this._cordovaRequestToObservable<string>(
+            iotizeBLE.send,
+            FormatHelper.toHexString(data),
+            requestOptions
+        )
+            .pipe(map((hexString: string) => FormatHelper.hexStringToBuffer(hexString)));
+    }
+
+    /**
+     * Sends an idempotent read (android only). Identical reads in flight share one exchange with the device,
+     * and the response is reused for cacheTtlMs. Any other request to the device invalidates the cache.
+     */
+    sendCached(data: Uint8Array, cacheTtlMs: number): Observable<Uint8Array> {
+        return this._cordovaRequestToObservable<string>(
             iotizeBLE.send,
+            FormatHelper.toHexString(data),
+            {
+                timeout: this.options.send ? this.options.send.timeout : undefined,
+                cacheTtlMs: cacheTtlMs
+            }
+        )
+            .pipe(map((hexString: string) => FormatHelper.hexStringToBuffer(hexString)));
+    }
+
+    /**
+     * Cancels the pending requests of this device sent with send or sendCached (android only).
+     * They fail with the 'Cancelled' error code.
+     */
+    cancelPendingRequests(): Promise<void> {
+        const requestIds = Array.from(this.pendingRequestIds);
+        return Promise.all(requestIds.map(requestId => this._cancelRequest(requestId)))
+            .then(() => undefined);
+    }
+
+    /**
+     * Send several frames in one bridge call. They are sent one after the other by the native side.
+     * The result array contains one entry per frame sent (it ends with the first error when stopOnError is set).
+     */
+    sendBatch(frames: Uint8Array[], options?: CordovaBLEBatchOptions): Observable<BLEBatchResult[]> {
+        let promise = this._cordovaCallToPromise<CordovaBLEBatchResult[]>(
+            iotizeBLE.sendRequests,
             this.deviceId,
-            FormatHelper.toHexString(data)
+            frames.map(frame => FormatHelper.toHexString(frame)),
+            options || {}
         )
-            .then((hexString: string) => FormatHelper.hexStringToBuffer(hexString));
+            .then((results: CordovaBLEBatchResult[]) => results.map(result => {
+                if (result.error) {
+                    return { error: result.error };
+                }
+                return { response: FormatHelper.hexStringToBuffer(result.response) };
+            }));
         return from(promise);
     }
 
+    /**
+     * Sends the given frame periodically from the native side and emits the responses (android only).
+     * The stream stops when the observable is unsubscribed, and errors when the link drops.
+     * A new stream on the same device completes this one.
+     */
+    stream(data: Uint8Array, options?: CordovaBLEStreamOptions): Observable<Uint8Array> {
+        return new Observable<Uint8Array>(subscriber => {
+            const streamId = `${this.deviceId}-stream-${++BLEComProtocol.lastStreamId}`;
+            iotizeBLE.subscribe(
+                this.deviceId,
+                FormatHelper.toHexString(data),
+                { ...options, streamId: streamId },
+                (batch?: CordovaBLEStreamBatch) => {
+                    if (!batch) {
+                        subscriber.complete();
+                        return;
+                    }
+                    debug('stream batch', batch.frames.length, 'dropped', batch.dropped, 'errors', batch.errors);
+                    for (const frame of batch.frames) {
+                        subscriber.next(FormatHelper.hexStringToBuffer(frame));
+                    }
+                },
+                (err: any) => subscriber.error(err)
+            );
+            return () => {
+                // By id, so that a newer stream of the device keeps running
+                iotizeBLE.unsubscribe(this.deviceId, () => {}, (err) => debug('unsubscribe error', err), streamId);
+            };
+        });
+    }
+
+    /**
+     * Sends a large sequence of frames in one bridge call and emits the progress events (android only).
+     * The observable completes with the last event, or errors at the first failing frame:
+     * the transfer can then be resumed with resumeTransfer(progress.transferId).
+     * Each frame must be 1 to 65535 bytes long, as its length is sent on 2 bytes.
+     */
+    transfer(frames: Uint8Array[], options?: CordovaBLETransferOptions): Observable<CordovaBLETransferProgress> {
+        let length = 0;
+        for (let i = 0; i < frames.length; i++) {
+            if (frames[i].length === 0 || frames[i].length > 0xFFFF) {
+                return throwError(new Error(`Frame ${i} is ${frames[i].length} bytes long, frames must be 1 to 65535 bytes long`));
+            }
+            length += 2 + frames[i].length;
+        }
+        const buffer = new Uint8Array(length);
+        let position = 0;
+        for (const frame of frames) {
+            buffer[position++] = frame.length >> 8;
+            buffer[position++] = frame.length & 0xFF;
+            buffer.set(frame, position);
+            position += frame.length;
+        }
+        return this._transferObservable(iotizeBLE.startTransfer, this.deviceId, buffer.buffer, options || {});
+    }
+
+    resumeTransfer(transferId: string): Observable<CordovaBLETransferProgress> {
+        return this._transferObservable(iotizeBLE.resumeTransfer, transferId);
+    }
+
+    protected _transferObservable(cordovaFct: (...args: any[]) => any, ...args: any[]): Observable<CordovaBLETransferProgress> {
+        return new Observable<CordovaBLETransferProgress>(subscriber => {
+            cordovaFct.apply(iotizeBLE, args.concat([
+                (progress: CordovaBLETransferProgress) => {
+                    subscriber.next(progress);
+                    if (progress.done) {
+                        subscriber.complete();
+                    }
+                },
+                (err: any) => subscriber.error(err)
+            ]));
+        });
+    }
+
+    /**
+     * Request queue statistics of this device (android only)
+     */
+    getQueueStats(): Promise<CordovaBLEQueueStats> {
+        return this._cordovaCallToPromise<CordovaBLEQueueStats>(
+            iotizeBLE.getQueueStats,
+            this.deviceId
+        );
+    }
+
+    /**
+     * Requests the MTU and connection priority of a performance profile (android only).
+     * Use highThroughput for bulk reads and lowPower for idle monitoring.
+     */
+    setPerformanceProfile(options: CordovaBLEPerformanceOptions): Promise<CordovaBLEPerformanceResult> {
+        return this._cordovaCallToPromise<CordovaBLEPerformanceResult>(
+            iotizeBLE.setPerformanceProfile,
+            this.deviceId,
+            options
+        );
+    }
+
     protected _cordovaCallToPromise<T>(cordovaFct: (...args: any[]) => any, ...args: any[]): Promise<T> {
         if (!cordovaFct) {
             console.warn('INTERNAL ERROR UNKOWN CORDOVA FUNCTION');
@@ -108,5 +291,54 @@ export class BLEComProtocol extends QueueComProtocol {
         });
     }
 
+    /**
+     * Calls a send function, which takes its options after the callbacks, with a new request id.
+     * Unsubscribing before the response cancels the native request.
+     */
+    protected _cordovaRequestToObservable<T>(cordovaFct: (...args: any[]) => any, data: any, options: CordovaBLERequestOptions): Observable<T> {
+        if (!this.cancellableRequests) {
+            return from(new Promise<T>((resolve: any, reject: any) => {
+                cordovaFct.call(iotizeBLE, this.deviceId, data, resolve, reject, options);
+            }));
+        }
+        return new Observable<T>(subscriber => {
+            const requestId = `${this.deviceId}-${++BLEComProtocol.lastRequestId}`;
+            this.pendingRequestIds.add(requestId);
+            cordovaFct.call(
+                iotizeBLE,
+                this.deviceId,
+                data,
+                (result: T) => {
+                    this.pendingRequestIds.delete(requestId);
+                    subscriber.next(result);
+                    subscriber.complete();
+                },
+                (err: any) => {
+                    this.pendingRequestIds.delete(requestId);
+                    subscriber.error(err);
+                },
+                { ...options, requestId: requestId }
+            );
+            return () => {
+                if (this.pendingRequestIds.has(requestId)) {
+                    this._cancelRequest(requestId);
+                }
+            };
+        });
+    }
+
+    protected _cancelRequest(requestId: string): Promise<boolean> {
+        return new Promise<boolean>((resolve: any) => {
+            iotizeBLE.cancel(
+                requestId,
+                (cancelled: boolean) => resolve(cancelled),
+                (err: any) => {
+                    debug('cancel error', err);
+                    resolve(false);
+                }
+            );
+        });
+    }
+
 };
 
@@ -6,22 +6,56 @@
 //
 
 // import { exec } from "cordova";
+import { CordovaBLEBatchOptions, CordovaBLEBatchResult, CordovaBLEConnectOptions, CordovaBLEEventBatch, CordovaBLEEventOptions, CordovaBLEKnownDevice, CordovaBLEPerformanceOptions, CordovaBLEPerformanceResult, CordovaBLERequestOptions, CordovaBLEScanOptions, CordovaBLEScanResult, CordovaBLEStats, CordovaBLEStreamBatch, CordovaBLEStreamOptions, CordovaBLETrace, CordovaBLETransferOptions, CordovaBLETransferProgress } from './definitions';
+
 export interface CordovaInterface {
 
     checkAvailable (success: (data: any) => any, failure: (err: any) => any): void;
 
-    startScan(success: (data: any) => any, failure: (err: any) => any): void;
+    startScan(success: (data: any) => any, failure: (err: any) => any, options?: CordovaBLEScanOptions): void;
 
     stopScan(success: (data: any) => any, failure: (err: any) => any): void;
             
-    connect(device_id: string, success: (data: any) => any, failure: (err: any) => any): void;
+    getDiscoveredDevices(success: (data: CordovaBLEScanResult[]) => any, failure: (err: any) => any): void;
+
+    getKnownDevices(success: (devices: CordovaBLEKnownDevice[]) => any, failure: (err: any) => any): void;
+
+    forgetKnownDevice(device_id: string, success: () => any, failure: (err: any) => any): void;
+
+    connect(device_id: string, success: (data: any) => any, failure: (err: any) => any, options?: CordovaBLEConnectOptions): void;
         
     disConnect(device_id: string, success: (data: any) => any, failure: (err: any) => any): void;
     
     isConnected(device_id: string, success: (data: any) => any, failure: (err: any) => any): void;
     
-    send(device_id: string, data: any, success: (data: any) => any, failure: (err: any) => any): void;
+    send(device_id: string, data: any, success: (data: any) => any, failure: (err: any) => any, options?: CordovaBLERequestOptions): void;
+
+    sendBinary(device_id: string, data: ArrayBuffer, success: (data: ArrayBuffer) => any, failure: (err: any) => any, options?: CordovaBLERequestOptions): void;
+
+    setPerformanceProfile(device_id: string, options: CordovaBLEPerformanceOptions, success: (result: CordovaBLEPerformanceResult) => any, failure: (err: any) => any): void;
+
+    startTransfer(device_id: string, data: ArrayBuffer, options: CordovaBLETransferOptions | undefined, success: (progress: CordovaBLETransferProgress) => any, failure: (err: any) => any): void;
+
+    resumeTransfer(transfer_id: string, success: (progress: CordovaBLETransferProgress) => any, failure: (err: any) => any): void;
+
+    cancel(request_id: string, success: (cancelled: boolean) => any, failure: (err: any) => any): void;
     
+    sendRequests(device_id: string, frames: string[], options: CordovaBLEBatchOptions | undefined, success: (data: CordovaBLEBatchResult[]) => any, failure: (err: any) => any): void;
+
+    subscribe(device_id: string, data: string, options: CordovaBLEStreamOptions | undefined, success: (data?: CordovaBLEStreamBatch) => any, failure: (err: any) => any): void;
+
+    unsubscribe(device_id: string, success: (data: any) => any, failure: (err: any) => any, stream_id?: string): void;
+
+    subscribeEvents(options: CordovaBLEEventOptions | undefined, success: (data?: CordovaBLEEventBatch) => any, failure: (err: any) => any): void;
+
+    unsubscribeEvents(success: () => any, failure: (err: any) => any): void;
+
+    getQueueStats(device_id: string | undefined, success: (data: any) => any, failure: (err: any) => any): void;
+
+    getStats(options: { reset?: boolean } | undefined, success: (data: CordovaBLEStats) => any, failure: (err: any) => any): void;
+
     getLastError(success: (data: any) => any, failure: (err: any) => any): void;
+
+    dumpTrace(success: (trace: CordovaBLETrace) => any, failure: (err: any) => any): void;
     
 }
\ No newline at end of file
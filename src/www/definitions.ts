@@ -2,10 +2,514 @@ export interface CordovaBLEScanResult {
     name: string;
     address: string;
     rssi?: number;
+    /**
+     * Timestamp (ms) of the last advertisement received (android only)
+     */
+    lastSeen?: number;
+}
+
+/**
+ * Devices not seen for the device TTL during a coalesced scan (android only)
+ */
+export interface CordovaBLELostDevicesEvent {
+    lost: CordovaBLEScanResult[];
+}
+
+/**
+ * Statistics of a scan session (android only)
+ */
+export interface CordovaBLEScanSession {
+    profile: CordovaBLEScanOptions['profile'];
+    startedAt: number;
+    durationMs: number;
+    /**
+     * Time spent scanning, without the pauses of the profile
+     */
+    activeMs: number;
+    /**
+     * Distinct devices found
+     */
+    devices: number;
+    /**
+     * Number of times the native scan has been started
+     */
+    starts: number;
+    /**
+     * true if the session ended after durationMs
+     */
+    timedOut: boolean;
+    /**
+     * Time from the session start to the discovery of each discoverTargets number of devices, if reached
+     */
+    timeToDiscoverMs: { [devices: string]: number };
+}
+
+/**
+ * Time-boxed scan session ended (android only)
+ */
+export interface CordovaBLEScanEndedEvent {
+    ended: CordovaBLEScanSession;
+}
+
+/**
+ * Native scan filter (android only). All the criteria given must match.
+ */
+export interface CordovaBLEScanFilter {
+    namePrefix?: string;
+    /**
+     * Java regular expression the whole name must match
+     */
+    nameRegex?: string;
+    minRssi?: number;
+    addresses?: string[];
+    /**
+     * Not supported: the scanner does not report the advertised services, the native side rejects this key
+     */
+    serviceUuids?: never;
+}
+
+/**
+ * Native scan options (android only)
+ */
+export interface CordovaBLEScanOptions {
+    /**
+     * Deliver scan results as arrays of changed devices instead of one result per advertisement
+     */
+    coalesce?: boolean;
+    /**
+     * Maximum delay before changed devices are delivered (default 500ms)
+     */
+    flushIntervalMs?: number;
+    /**
+     * Deliver changed devices as soon as this number is reached (default 50)
+     */
+    batchSize?: number;
+    /**
+     * 'latest' keeps the last rssi value, 'smoothed' averages it (default 'latest')
+     */
+    rssi?: 'latest' | 'smoothed';
+    /**
+     * Weight of a new rssi value in 'smoothed' mode, between 0 and 1 (default 0.3)
+     */
+    rssiSmoothing?: number;
+    /**
+     * Devices not seen for this time are reported as lost (default 15000ms)
+     */
+    deviceTtlMs?: number;
+    /**
+     * Maximum number of devices kept, the least recently seen one is reported as lost above (default 500)
+     */
+    maxDevices?: number;
+    /**
+     * Advertisements not matching the filter are dropped by the native side
+     */
+    filter?: CordovaBLEScanFilter;
+    /**
+     * Deliver scan results only to the event channel, see subscribeEvents
+     */
+    events?: boolean;
+    /**
+     * lowLatency scans continuously (default), balanced and opportunistic scan a part of the time,
+     * adaptive scans continuously and backs off when no new device shows up
+     */
+    profile?: 'lowLatency' | 'balanced' | 'opportunistic' | 'adaptive';
+    /**
+     * Ends the scan session after this time, 0 (default) scans until stopScan
+     */
+    durationMs?: number;
+    /**
+     * Time without new device before the adaptive profile backs off (default 5000ms)
+     */
+    idleMs?: number;
+    /**
+     * Longest pause of the adaptive profile (default 30000ms)
+     */
+    maxPauseMs?: number;
+    /**
+     * Numbers of devices whose discovery time is measured (default [1, 5, 10])
+     */
+    discoverTargets?: number[];
+}
+
+/**
+ * Native connect options (android only)
+ */
+export interface CordovaBLEPerformanceOptions {
+    /**
+     * highThroughput requests a 247 bytes MTU and a high connection priority,
+     * lowPower a low power connection priority and balanced the default connection priority
+     */
+    profile: 'highThroughput' | 'balanced' | 'lowPower';
+    /**
+     * MTU to request instead of the profile one (23 to 517)
+     */
+    mtu?: number;
+}
+
+export interface CordovaBLEPerformanceResult {
+    deviceId: string;
+    profile: string;
+    /**
+     * MTU requested, 0 if unchanged
+     */
+    requestedMtu: number;
+    /**
+     * True if the MTU request has been accepted by the Bluetooth stack
+     */
+    mtuRequested: boolean;
+    /**
+     * True if the connection priority request has been accepted by the Bluetooth stack
+     */
+    priorityRequested: boolean;
+    /**
+     * MTU in use after the exchange, 0 if it cannot be read
+     */
+    negotiatedMtu: number;
+    /**
+     * True if the MTU exchange has been seen to complete
+     */
+    mtuConfirmed: boolean;
+    /**
+     * Why the profile may not be fully applied, absent if it is
+     */
+    warning?: string;
+}
+
+export interface CordovaBLEAutoReconnectOptions {
+    /**
+     * Default 5
+     */
+    maxAttempts?: number;
+    /**
+     * Delay before the first attempt, doubled (multiplier) at each attempt up to maxDelayMs.
+     * Default 500ms
+     */
+    initialDelayMs?: number;
+    /**
+     * Default 10000ms
+     */
+    maxDelayMs?: number;
+    /**
+     * Default 2
+     */
+    multiplier?: number;
+    /**
+     * Part of each delay randomized, between 0 and 1 (default 0.2)
+     */
+    jitter?: number;
+}
+
+export interface CordovaBLEConnectOptions {
+    /**
+     * Foreground connects are scheduled before background ones (default 'foreground')
+     */
+    priority?: 'foreground' | 'background';
+    /**
+     * Performance profile applied once connected
+     */
+    profile?: CordovaBLEPerformanceOptions['profile'];
+    mtu?: number;
+    /**
+     * Reconnect the device when its link drops, true for the default options, false to disable it
+     */
+    autoReconnect?: boolean | CordovaBLEAutoReconnectOptions;
+    /**
+     * Fails the connect with a 'Timeout' error if it is not done after this delay (ms)
+     */
+    timeout?: number;
+    /**
+     * Id to cancel the connect with iotizeBLE.cancel()
+     */
+    requestId?: string;
+}
+
+export interface CordovaBLERequestOptions {
+    /**
+     * Fails the request with a 'Timeout' error if no response is received after this delay (ms).
+     * The request is removed from the device queue, or interrupted if it is running.
+     */
+    timeout?: number;
+    /**
+     * Id to cancel the request with iotizeBLE.cancel(), must not be used by another pending request
+     */
+    requestId?: string;
+    /**
+     * Declares the request as an idempotent read: identical requests in flight share one exchange
+     * and the response is reused for this delay (ms). Requests without this option invalidate the device cache.
+     */
+    cacheTtlMs?: number;
+}
+
+export interface CordovaBLEBatchOptions {
+    /**
+     * Stop sending the remaining frames after the first error
+     */
+    stopOnError?: boolean;
+}
+
+/**
+ * Result of one frame sent with sendRequests.
+ * Either response (hex string) or error is set.
+ */
+export interface CordovaBLEBatchResult {
+    response?: string;
+    error?: {
+        code: string;
+        message: string;
+    };
+}
+
+/**
+ * Request queue statistics of a device (android only)
+ */
+export interface CordovaBLEQueueStats {
+    deviceId: string;
+    /**
+     * Number of requests waiting in the queue
+     */
+    depth: number;
+    capacity: number;
+    busy: boolean;
+    overflowPolicy: 'reject' | 'block';
+    executed: number;
+    rejected: number;
+    lastWaitMs: number;
+    averageWaitMs: number;
+    maxWaitMs: number;
+}
+
+/**
+ * Options of a native polling stream (android only)
+ */
+export interface CordovaBLEStreamOptions {
+    /**
+     * Id of the stream, so that unsubscribe with this id does not stop a newer stream of the device
+     */
+    streamId?: string;
+    /**
+     * Delay between two polls of the device (default 100ms)
+     */
+    periodMs?: number;
+    /**
+     * Delay between two deliveries of buffered responses (default 250ms)
+     */
+    flushIntervalMs?: number;
+    /**
+     * Maximum number of responses delivered at once (default 50)
+     */
+    batchSize?: number;
+    /**
+     * Maximum number of buffered responses (default 256)
+     */
+    bufferSize?: number;
+    /**
+     * Response dropped when the buffer is full (default 'oldest')
+     */
+    drop?: 'oldest' | 'newest';
+}
+
+export interface CordovaBLEStreamBatch {
+    /**
+     * Responses as hex strings, oldest first
+     */
+    frames: string[];
+    /**
+     * Total number of responses dropped since the stream started
+     */
+    dropped: number;
+    /**
+     * Total number of failed polls since the stream started
+     */
+    errors: number;
+}
+
+export interface CordovaBLELatencyStats {
+    count: number;
+    meanMs: number;
+    p50Ms: number;
+    p95Ms: number;
+    p99Ms: number;
+    maxMs: number;
+}
+
+/**
+ * Plugin metrics returned by getStats (android only)
+ */
+export interface CordovaBLEStats {
+    devices: {
+        deviceId: string;
+        requests: number;
+        bytesOut: number;
+        bytesIn: number;
+        errors: number;
+        cacheHits: number;
+        coalesced: number;
+        reconnects: number;
+        queueWait: CordovaBLELatencyStats;
+        send: CordovaBLELatencyStats;
+        serialization: CordovaBLELatencyStats;
+        connect: CordovaBLELatencyStats;
+        disconnect: CordovaBLELatencyStats;
+    }[];
+    scan: {
+        messages: number;
+        devices: number;
+        delivery: CordovaBLELatencyStats;
+        lastSession?: CordovaBLEScanSession;
+    };
+    /**
+     * Times since the plugin initialization, 0 until it happened
+     */
+    startup: {
+        warmStart: boolean;
+        warmUpMs: number;
+        firstScanResultMs: number;
+        firstResponseMs: number;
+    };
 }
 
 /**
  * @deprecated
  * use CordovaBLEScanResult instead
  */
-export type DiscoveredDeviceType = CordovaBLEScanResult;
\ No newline at end of file
+export type DiscoveredDeviceType = CordovaBLEScanResult;
+
+export interface CordovaBLETransferOptions {
+    /**
+     * Id of the transfer, to resume or cancel it. Generated if not given.
+     */
+    transferId?: string;
+    /**
+     * Number of frames sent before letting the other requests of the device run (default 16).
+     * Frames are still sent one at a time, each waiting for its response.
+     */
+    framesPerSlice?: number;
+    /**
+     * Minimum delay between two progress events (default 250ms)
+     */
+    progressIntervalMs?: number;
+    /**
+     * Index of the first frame to send, to resume a transfer that is no longer known by the native side
+     */
+    offset?: number;
+    /**
+     * Return the responses of all frames, length prefixed and base64 encoded, in the last event
+     */
+    collectResponses?: boolean;
+    /**
+     * Time a failed transfer is kept for resumeTransfer before its buffer is released (default 120000ms)
+     */
+    resumeTtlMs?: number;
+}
+
+export interface CordovaBLETransferProgress {
+    transferId: string;
+    deviceId: string;
+    sentFrames: number;
+    totalFrames: number;
+    bytesSent: number;
+    totalBytes: number;
+    /**
+     * Throughput in KB/s, while the transfer is running on the device queue
+     */
+    kBps: number;
+    done: boolean;
+    responses?: string;
+}
+
+/**
+ * Device connected before, kept on disk by the native side (android only)
+ */
+export interface CordovaBLEKnownDevice {
+    address: string;
+    name?: string;
+    /**
+     * Timestamp (ms) of the last connect
+     */
+    lastConnected: number;
+    /**
+     * MTU last requested, 0 if none
+     */
+    mtu: number;
+    /**
+     * Performance profile last requested, applied again when connecting without profile option
+     */
+    profile?: CordovaBLEPerformanceOptions['profile'];
+    /**
+     * Service UUIDs found at the last connect
+     */
+    services: string[];
+}
+
+export type CordovaBLEEventType = 'scan' | 'lost' | 'state' | 'error';
+
+/**
+ * Event channel options (android only)
+ */
+export interface CordovaBLEEventOptions {
+    /**
+     * Maximum delay before recorded events are delivered (default 50ms)
+     */
+    flushIntervalMs?: number;
+    /**
+     * Maximum number of events in one batch, delivered as soon as reached (default 64)
+     */
+    batchSize?: number;
+    /**
+     * Maximum number of events waiting, the oldest one is dropped above (default 1024)
+     */
+    bufferSize?: number;
+    /**
+     * Types of the events delivered (default all)
+     */
+    types?: CordovaBLEEventType[];
+}
+
+export type CordovaBLEEvent =
+    ['scan', number, string, string | null, number] |
+    ['lost', number, string] |
+    ['state', number, string, string] |
+    ['error', number, string | null, string, string, string | null];
+
+export interface CordovaBLEEventBatch {
+    /**
+     * [type, timestamp, ...fields], oldest first
+     */
+    events: CordovaBLEEvent[];
+    /**
+     * Number of events dropped since the subscription
+     */
+    dropped: number;
+}
+
+/**
+ * Event of the flight recorder, see dumpTrace (android only)
+ */
+export interface CordovaBLETraceEvent {
+    timestamp: number;
+    kind: 'request' | 'state' | 'error';
+    deviceId?: string;
+    operation: string;
+    durationMs: number;
+    /**
+     * Bytes sent by a request
+     */
+    size: number;
+    /**
+     * Error code, or new state
+     */
+    code?: string;
+    message?: string;
+}
+
+export interface CordovaBLETrace {
+    capacity: number;
+    /**
+     * Number of events recorded since the start, including the ones no longer kept
+     */
+    recorded: number;
+    /**
+     * Oldest first
+     */
+    events: CordovaBLETraceEvent[];
+}
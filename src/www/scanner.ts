@@ -9,7 +9,7 @@ import { Observable, BehaviorSubject } from 'rxjs';
 import { DeviceScanner, DeviceScannerOptions } from '@iotize/device-client.js/device/scanner/device-scanner';
 import { CordovaInterface } from './cordova-interface';
 import { debug } from './logger';
-import { CordovaBLEScanResult } from './definitions';
+import { CordovaBLEScanOptions, CordovaBLEScanResult } from './definitions';
 
 declare var iotizeBLE: CordovaInterface;
 
@@ -21,7 +21,10 @@ export class BLEScanner implements DeviceScanner<CordovaBLEScanResult> {
     private _results = new BehaviorSubject<CordovaBLEScanResult[]>([]);
     private _scanning$ = new BehaviorSubject<boolean>(false);
 
-    constructor() {
+    /**
+     * @param scanOptions native scan options. Results are coalesced by default
+     */
+    constructor(public scanOptions: CordovaBLEScanOptions = { coalesce: true }) {
     }
 
     get scanning(): Observable<boolean> {
@@ -60,6 +63,19 @@ export class BLEScanner implements DeviceScanner<CordovaBLEScanResult> {
                             resolve();
                             return;
                         }
+                        if (Array.isArray(result)) {
+                            this.addOrRefreshDevices(result);
+                            return;
+                        }
+                        if (result && Array.isArray(result.lost)) {
+                            this.removeDevices(result.lost);
+                            return;
+                        }
+                        if (result && result.ended) {
+                            debug(`Scan session ended after ${result.ended.durationMs}ms, ${result.ended.devices} devices found`);
+                            this._scanning$.next(false);
+                            return;
+                        }
                         this.addOrRefreshDevice(result);
                     }, (error) => {
                         iotizeBLE
@@ -70,7 +86,7 @@ export class BLEScanner implements DeviceScanner<CordovaBLEScanResult> {
                         });
                         reject(error);
                         this._scanning$.next(false);
-                    });
+                    }, this.scanOptions);
                 }
             )
         });
@@ -94,6 +110,15 @@ export class BLEScanner implements DeviceScanner<CordovaBLEScanResult> {
         });
     }
 
+    /**
+     * Returns the devices currently known by the native side without restarting the scan (android only)
+     */
+    getDiscoveredDevices(): Promise<CordovaBLEScanResult[]> {
+        return new Promise<CordovaBLEScanResult[]>((resolve, reject) => {
+            iotizeBLE.getDiscoveredDevices(resolve, reject);
+        });
+    }
+
     /**
      * Returns true if this scanner is available
      */
@@ -112,6 +137,30 @@ export class BLEScanner implements DeviceScanner<CordovaBLEScanResult> {
         return this._results.value;
     }
 
+    /**
+     * Devices are already deduplicated by the native side
+     */
+    private addOrRefreshDevices(newDevices: CordovaBLEScanResult[]) {
+        for (const newDevice of newDevices) {
+            let storedDeviceIndex = this.devices.findIndex((entry) => entry.address == newDevice.address);
+            if (storedDeviceIndex >= 0) {
+                this.devices[storedDeviceIndex] = newDevice;
+            }
+            else {
+                this.devices.push(newDevice);
+            }
+        }
+        debug(`Refreshed ${newDevices.length} devices`);
+        this._results.next(this.devices);
+    }
+
+    private removeDevices(lostDevices: CordovaBLEScanResult[]) {
+        const lostAddresses = lostDevices.map(device => device.address);
+        const devices = this.devices.filter(device => lostAddresses.indexOf(device.address) < 0);
+        debug(`Removed ${this.devices.length - devices.length} lost devices`);
+        this._results.next(devices);
+    }
+
     private addOrRefreshDevice(newDevice: CordovaBLEScanResult) {
         let storedDeviceIndex = this.devices.findIndex((entry) => entry.address == newDevice.address);
         if (storedDeviceIndex >= 0) {
@@ -11,9 +11,9 @@ module.exports = {
     
     },
 
-    startScan: function (success, failure) {
+    startScan: function (success, failure, options) {
 
-        cordova.exec(success, failure, 'BLECom', 'startScan', []);
+        cordova.exec(success, failure, 'BLECom', 'startScan', options ? [options] : []);
     
     },
 
@@ -23,9 +23,27 @@ module.exports = {
     
     },
             
-    connect: function (device_id, success, failure) {
+    getDiscoveredDevices: function (success, failure) {
 
-        cordova.exec(success, failure, 'BLECom', 'connect', [device_id]);    
+        cordova.exec(success, failure, 'BLECom', 'getDiscoveredDevices', []);
+
+    },
+
+    getKnownDevices: function (success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'getKnownDevices', []);
+
+    },
+
+    forgetKnownDevice: function (device_id, success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'forgetKnownDevice', [device_id]);
+
+    },
+
+    connect: function (device_id, success, failure, options) {
+
+        cordova.exec(success, failure, 'BLECom', 'connect', [device_id, options || {}]);    
     
     },      
          
@@ -41,15 +59,93 @@ module.exports = {
     
     },
     
-    send: function (device_id, data, success, failure) {
+    send: function (device_id, data, success, failure, options) {
         
-        cordova.exec(success, failure, 'BLECom', 'sendRequest', [device_id, data]);
+        cordova.exec(success, failure, 'BLECom', 'sendRequest', [device_id, data, options || {}]);
     
     },
+
+    sendBinary: function (device_id, data, success, failure, options) {
+
+        cordova.exec(success, failure, 'BLECom', 'sendBinaryRequest', [device_id, data, options || {}]);
+
+    },
+
+    setPerformanceProfile: function (device_id, options, success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'setPerformanceProfile', [device_id, options || {}]);
+
+    },
+
+    startTransfer: function (device_id, data, options, success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'startTransfer', [device_id, data, options || {}]);
+
+    },
+
+    resumeTransfer: function (transfer_id, success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'resumeTransfer', [transfer_id]);
+
+    },
+
+    cancel: function (request_id, success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'cancel', [request_id]);
+
+    },
     
+    sendRequests: function (device_id, frames, options, success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'sendRequests', [device_id, frames, options || {}]);
+
+    },
+
+    subscribe: function (device_id, data, options, success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'subscribe', [device_id, data, options || {}]);
+
+    },
+
+    unsubscribe: function (device_id, success, failure, stream_id) {
+
+        cordova.exec(success, failure, 'BLECom', 'unsubscribe', [device_id, stream_id || ""]);
+
+    },
+
+    subscribeEvents: function (options, success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'subscribeEvents', [options || {}]);
+
+    },
+
+    unsubscribeEvents: function (success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'unsubscribeEvents', []);
+
+    },
+
+    getQueueStats: function (device_id, success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'getQueueStats', [device_id]);
+
+    },
+
+    getStats: function (options, success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'getStats', [options || {}]);
+
+    },
+
     getLastError: function (success, failure) {
     
         cordova.exec(success, failure, 'BLECom', 'getLastError', []);
     
     },
+
+    dumpTrace: function (success, failure) {
+
+        cordova.exec(success, failure, 'BLECom', 'dumpTrace', []);
+
+    },
 };